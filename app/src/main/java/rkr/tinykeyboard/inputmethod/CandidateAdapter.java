@@ -6,42 +6,87 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.List;
 
+/**
+ * One adapter for the lifetime of the keyboard. New candidate lists are diffed against
+ * the shown one on a background thread, and only the cells whose word changed are
+ * rebound, so a keystroke neither inflates views nor allocates listeners.
+ */
 public class CandidateAdapter extends RecyclerView.Adapter<CandidateAdapter.ViewHolder> {
-    private final List<String> candidateList;
+    static final int MAX_VISIBLE_CANDIDATES = 12;
+
+    // Cells are slots: the word in slot i is "the same item" as the previous word in slot
+    // i, so a changed word rebinds the existing cell instead of a remove and an insert.
+    private static final DiffUtil.ItemCallback<String> BY_SLOT = new DiffUtil.ItemCallback<String>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull String oldItem, @NonNull String newItem) {
+            return true;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull String oldItem, @NonNull String newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    private final AsyncListDiffer<String> differ = new AsyncListDiffer<>(this, BY_SLOT);
     private final CandidateSelectionListener listener;
 
-    public CandidateAdapter(List<String> candidates, CandidateSelectionListener listener) {
-        this.candidateList = candidates.size() > 12 ? candidates.subList(0, 12) : candidates;
+    public CandidateAdapter(CandidateSelectionListener listener) {
         this.listener = listener;
     }
 
+    /**
+     * Shows {@code candidates}, which must not be modified afterwards. {@code onCommitted},
+     * if not null, runs on the main thread once the list is applied to the cells.
+     */
+    public void submitCandidates(List<String> candidates, Runnable onCommitted) {
+        differ.submitList(candidates.size() > MAX_VISIBLE_CANDIDATES ? candidates.subList(0, MAX_VISIBLE_CANDIDATES) : candidates, onCommitted);
+    }
+
+    /**
+     * Fills the recycled view pool of {@code recyclerView} with enough cells for a full
+     * candidate list, so the first keystroke does not inflate them.
+     */
+    public void prewarm(RecyclerView recyclerView) {
+        RecyclerView.RecycledViewPool pool = recyclerView.getRecycledViewPool();
+        pool.setMaxRecycledViews(0, MAX_VISIBLE_CANDIDATES);
+        for (int i = 0; i < MAX_VISIBLE_CANDIDATES; i++) {
+            pool.putRecycledView(createViewHolder(recyclerView, 0));
+        }
+    }
+
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        Metrics.CANDIDATE_VIEWS_CREATED.incrementAndGet();
         View itemView = LayoutInflater.from(parent.getContext()).inflate(R.layout.candidate_item_layout, parent, false);
-        return new ViewHolder(itemView);
-    }
-
-    @Override
-    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        String candidate = candidateList.get(position);
-        holder.textView.setText(candidate);
+        ViewHolder holder = new ViewHolder(itemView);
 
         // Handle item click
-        holder.itemView.setOnClickListener(v -> {
-            if (listener != null) {
-                listener.onCandidateSelected(candidate);
+        itemView.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (listener != null && position != RecyclerView.NO_POSITION) {
+                listener.onCandidateSelected(differ.getCurrentList().get(position));
             }
         });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        Metrics.CANDIDATE_BINDS.incrementAndGet();
+        holder.textView.setText(differ.getCurrentList().get(position));
     }
 
     @Override
     public int getItemCount() {
-        return candidateList.size();
+        return differ.getCurrentList().size();
     }
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
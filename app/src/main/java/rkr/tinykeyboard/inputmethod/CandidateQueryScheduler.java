@@ -0,0 +1,132 @@
+package rkr.tinykeyboard.inputmethod;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs candidate lookups, and the predictions after a commit, on a background worker,
+ * where the candidate generator lives. Every submitted query gets a sequence
+ * number; queries that arrive while the worker is busy are coalesced so only the latest
+ * one runs, and a result is only delivered to the main thread while its query is still
+ * the latest, so stale candidates never show up. Submitting and delivering reuse the
+ * same two runnables, so a keystroke allocates nothing here.
+ */
+class CandidateQueryScheduler {
+    interface Query {
+        /**
+         * The candidates for the composition {@code text}, or when {@code predict} the
+         * words likely to follow {@code text}, the word just committed.
+         */
+        List<String> run(String text, InputMode mode, boolean predict);
+    }
+
+    interface Callback {
+        void onCandidates(List<String> candidates);
+    }
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicLong latestSequence = new AtomicLong();
+    private final Query query;
+    private final Callback callback;
+    private final Runnable runLatest = this::runLatest;
+    private final Runnable deliverResult = this::deliverResult;
+
+    // Guarded by this; written on the main thread and read by the worker, or the reverse
+    private String pendingText;
+    private InputMode pendingMode;
+    private boolean pendingPredict;
+    private long pendingSequence;
+    private boolean queued;
+    private List<String> result;
+    private long resultSequence;
+
+    CandidateQueryScheduler(Query query, Callback callback) {
+        this.query = query;
+        this.callback = callback;
+    }
+
+    /**
+     * Must be called on the main thread. An empty {@code text} is answered immediately.
+     */
+    void submit(String text, InputMode mode) {
+        submit(text, mode, false);
+    }
+
+    /**
+     * Queries the words likely to follow {@code previousWord}; superseded like any other
+     * query by the next keystroke. Must be called on the main thread.
+     */
+    void submitPredictions(String previousWord, InputMode mode) {
+        submit(previousWord, mode, true);
+    }
+
+    private void submit(String text, InputMode mode, boolean predict) {
+        long sequence = latestSequence.incrementAndGet();
+        if (text.isEmpty()) {
+            callback.onCandidates(Collections.emptyList());
+            return;
+        }
+
+        boolean schedule;
+        synchronized (this) {
+            pendingText = text;
+            pendingMode = mode;
+            pendingPredict = predict;
+            pendingSequence = sequence;
+            schedule = !queued;
+            queued = true;
+        }
+        if (schedule) {
+            worker.execute(runLatest);
+        }
+    }
+
+    void shutdown() {
+        latestSequence.incrementAndGet();
+        worker.shutdownNow();
+    }
+
+    // Runs on the worker.
+    private void runLatest() {
+        String text;
+        InputMode mode;
+        boolean predict;
+        long sequence;
+        synchronized (this) {
+            queued = false;
+            text = pendingText;
+            mode = pendingMode;
+            predict = pendingPredict;
+            sequence = pendingSequence;
+            pendingText = null;
+        }
+        if (text == null || sequence != latestSequence.get()) {
+            return;
+        }
+        List<String> candidates = query.run(text, mode, predict);
+        synchronized (this) {
+            result = candidates;
+            resultSequence = sequence;
+        }
+        mainHandler.post(deliverResult);
+    }
+
+    private void deliverResult() {
+        List<String> candidates;
+        synchronized (this) {
+            candidates = result;
+            result = null;
+            if (candidates == null || resultSequence != latestSequence.get()) {
+                return;
+            }
+        }
+        callback.onCandidates(candidates);
+    }
+}
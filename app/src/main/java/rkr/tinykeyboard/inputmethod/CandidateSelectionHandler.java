@@ -11,6 +11,7 @@ public class CandidateSelectionHandler implements CandidateAdapter.CandidateSele
     @Override
     public void onCandidateSelected(String candidate) {
         keyboard.getCurrentInputConnection().commitText(candidate, candidate.length());
+        keyboard.learn(candidate);
         keyboard.reset();
     }
 }
@@ -1,27 +1,44 @@
 package rkr.tinykeyboard.inputmethod;
 
 import android.content.Context;
+import android.content.pm.PackageManager;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 public class DictUtil {
-    static String getContentFromAssets(Context context, String fileName) {
-        String jsonString;
+    /**
+     * Copies an asset into the app's files dir so it can be memory-mapped. The copy is
+     * reused until the app is updated, since assets cannot change without an update.
+     * The asset is streamed through a fixed buffer, so memory use does not depend on its
+     * size, and short reads are simply followed by more reads until the end of the stream.
+     */
+    static File extractAsset(Context context, String fileName) throws IOException {
+        File file = new File(context.getFilesDir(), fileName);
+        long installedAt;
         try {
-            InputStream is = context.getAssets().open(fileName);
-
-            int size = is.available();
-            byte[] buffer = new byte[size];
-            is.read(buffer);
-            is.close();
-
-            jsonString = new String(buffer, "UTF-8");
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
+            installedAt = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            installedAt = Long.MAX_VALUE;
+        }
+        if (file.exists() && file.lastModified() >= installedAt) {
+            return file;
         }
 
-        return jsonString;
+        File temp = new File(context.getFilesDir(), fileName + ".tmp");
+        try (InputStream in = context.getAssets().open(fileName); OutputStream out = new FileOutputStream(temp)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to extract " + fileName);
+        }
+        return file;
     }
 }
@@ -0,0 +1,267 @@
+package rkr.tinykeyboard.inputmethod;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import rkr.tinykeyboard.inputmethod.Dictionaries.Tier;
+
+/**
+ * Loads the dictionaries in parallel and publishes them as immutable snapshots. Readers
+ * always see a consistent {@link Dictionaries}; a dictionary that is still loading is
+ * null in the snapshot, and callers fall back to raw input until it arrives.
+ *
+ * <p>Under memory pressure the snapshot steps down a {@link Tier}, dropping the optional
+ * dictionaries, and steps back up by mapping them again from the already extracted files.
+ */
+class DictionaryManager {
+    private static final String TAG = "hallelujah";
+    private static final int DICTIONARY_COUNT = 5;
+    // Leading letters warmed after the English dictionary is mapped; the rest fault in on first use
+    private static final int PREFETCHED_LETTERS = 8;
+    private static final long IDLE_THREAD_SECONDS = 10;
+
+    interface Listener {
+        /**
+         * Called on the main thread each time a dictionary finishes loading.
+         */
+        void onProgress(int loaded, int total);
+    }
+
+    private final AtomicReference<Dictionaries> snapshot = new AtomicReference<>(Dictionaries.EMPTY);
+    private final CompletableFuture<Dictionaries> ready = new CompletableFuture<>();
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final AtomicLongArray queriesByTier = new AtomicLongArray(Tier.values().length);
+    private final AtomicBoolean restoring = new AtomicBoolean();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Whether each optional dictionary loaded, so a restore maps only what a tier dropped
+    private volatile boolean hasBigrams;
+    private volatile boolean hasPinyinToEnglish;
+    // Loads, then restores dropped dictionaries; its threads exit while it is idle
+    private ThreadPoolExecutor loader;
+
+    void load(Context context, Listener listener) {
+        int threads = Math.max(1, Math.min(DICTIONARY_COUNT, Runtime.getRuntime().availableProcessors()));
+        loader = new ThreadPoolExecutor(threads, threads, IDLE_THREAD_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        loader.allowCoreThreadTimeOut(true);
+
+        // Small, and answers the first keystrokes while the dictionaries are still mapping
+        loader.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                PrefixTable prefixes = PrefixTable.map(extract(context, "prefix_table.bin"));
+                snapshot.updateAndGet(dictionaries -> dictionaries.withPrefixes(prefixes));
+            } catch (IOException e) {
+                Log.e(TAG, "Could not load the prefix table", e);
+            }
+            onLoaded("prefix table", start, listener);
+        });
+
+        loader.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                EnglishDict english = EnglishDict.map(extract(context, "english_dict.bin"));
+                snapshot.updateAndGet(dictionaries -> dictionaries.withEnglish(english));
+            } catch (IOException e) {
+                Log.e(TAG, "Could not load the English dictionary", e);
+            }
+            onLoaded("english", start, listener);
+            EnglishDict english = snapshot.get().english;
+            if (english != null) {
+                prefetch(english);
+            }
+        });
+
+        loader.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                PinyinDict pinyin = PinyinDict.map(extract(context, "pinyin_dict.bin"));
+                snapshot.updateAndGet(dictionaries -> dictionaries.withPinyin(pinyin));
+            } catch (IOException e) {
+                Log.e(TAG, "Could not load the pinyin dictionary", e);
+            }
+            onLoaded("pinyin", start, listener);
+        });
+
+        loader.execute(() -> {
+            long start = System.nanoTime();
+            BigramDict bigrams = mapBigrams(context);
+            if (bigrams != null) {
+                hasBigrams = true;
+                snapshot.updateAndGet(dictionaries -> dictionaries.withBigrams(bigrams));
+            }
+            onLoaded("bigram", start, listener);
+        });
+
+        loader.execute(() -> {
+            long start = System.nanoTime();
+            PinyinEnglishDict pinyinToEnglish = mapPinyinToEnglish(context);
+            if (pinyinToEnglish != null) {
+                hasPinyinToEnglish = true;
+                snapshot.updateAndGet(dictionaries -> dictionaries.withPinyinToEnglish(pinyinToEnglish));
+            }
+            onLoaded("cedict", start, listener);
+        });
+    }
+
+    /**
+     * Extracts an asset, timing it as a load phase apart from mapping and publishing.
+     */
+    private static File extract(Context context, String fileName) throws IOException {
+        long start = System.nanoTime();
+        File file = DictUtil.extractAsset(context, fileName);
+        Metrics.recordLoadPhase(fileName + " extract", System.nanoTime() - start);
+        return file;
+    }
+
+    private static BigramDict mapBigrams(Context context) {
+        try {
+            return BigramDict.map(extract(context, "bigram_dict.bin"));
+        } catch (IOException e) {
+            Log.e(TAG, "Could not load the bigram dictionary", e);
+            return null;
+        }
+    }
+
+    private static PinyinEnglishDict mapPinyinToEnglish(Context context) {
+        try {
+            // Built only when CC-CEDICT was downloaded, so a missing asset is expected
+            return PinyinEnglishDict.map(extract(context, "cedict.bin"));
+        } catch (IOException e) {
+            Log.w(TAG, "cedict dictionary is missing, English words for pinyin are disabled", e);
+            return null;
+        }
+    }
+
+    /**
+     * Steps down to the tier for an {@code onTrimMemory} level; never steps up.
+     */
+    void onTrimMemory(int level) {
+        Tier tier;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            tier = Tier.CORE;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            tier = Tier.REDUCED;
+        } else {
+            return;
+        }
+        Dictionaries previous = snapshot.getAndUpdate(dictionaries -> dictionaries.tier.compareTo(tier) >= 0 ? dictionaries : dictionaries.withTier(tier));
+        if (previous.tier.compareTo(tier) < 0) {
+            Log.i(TAG, "dictionary tier " + previous.tier + " -> " + tier + ", queries " + queryCounts());
+        }
+    }
+
+    /**
+     * Goes back to the full tier once memory is available again. REDUCED only turned
+     * features off; CORE also dropped the optional dictionaries, which are still extracted,
+     * so this maps those again on the loader. Called on every input view; while one
+     * restore is pending the others return at once.
+     */
+    void restore(Context context) {
+        if (snapshot.get().tier == Tier.FULL || !restoring.compareAndSet(false, true)) {
+            return;
+        }
+        // The loader may still be extracting the very files this maps; wait until it is done
+        ready.thenRunAsync(() -> {
+            try {
+                Dictionaries current = snapshot.get();
+                BigramDict bigrams = current.bigrams == null && hasBigrams ? mapBigrams(context) : null;
+                PinyinEnglishDict pinyinToEnglish = current.pinyinToEnglish == null && hasPinyinToEnglish ? mapPinyinToEnglish(context) : null;
+                Dictionaries previous = snapshot.getAndUpdate(dictionaries -> {
+                    Dictionaries full = dictionaries.withTier(Tier.FULL);
+                    if (bigrams != null) {
+                        full = full.withBigrams(bigrams);
+                    }
+                    if (pinyinToEnglish != null) {
+                        full = full.withPinyinToEnglish(pinyinToEnglish);
+                    }
+                    return full;
+                });
+                Log.i(TAG, "dictionary tier " + previous.tier + " -> " + Tier.FULL + ", queries " + queryCounts());
+            } finally {
+                restoring.set(false);
+            }
+        }, loader);
+    }
+
+    /**
+     * Counts a candidate query against the tier of the snapshot that serves it.
+     */
+    void recordQuery(Dictionaries dictionaries) {
+        queriesByTier.incrementAndGet(dictionaries.tier.ordinal());
+    }
+
+    String queryCounts() {
+        StringBuilder counts = new StringBuilder();
+        for (Tier tier : Tier.values()) {
+            counts.append(counts.length() == 0 ? "" : " ").append(tier).append('=').append(queriesByTier.get(tier.ordinal()));
+        }
+        return counts.toString();
+    }
+
+    /**
+     * The latest snapshot; never null, but its dictionaries are null until loaded.
+     */
+    Dictionaries get() {
+        return snapshot.get();
+    }
+
+    /**
+     * Completes once every dictionary has been attempted, loaded or not.
+     */
+    CompletableFuture<Dictionaries> whenReady() {
+        return ready;
+    }
+
+    void shutdown() {
+        if (loader != null) {
+            loader.shutdownNow();
+        }
+    }
+
+    /**
+     * Warms the shards of the English dictionary that most words start with, largest
+     * first. The dictionary is usable before this: any other letter is paged in by the
+     * first prefix that needs it, and the kernel may drop the pages again under memory
+     * pressure since they are clean and file-backed.
+     */
+    private static void prefetch(EnglishDict english) {
+        long start = System.nanoTime();
+        List<Character> letters = new ArrayList<>();
+        for (char letter = 'a'; letter <= 'z'; letter++) {
+            letters.add(letter);
+        }
+        letters.sort((a, b) -> Integer.compare(english.countStartingWith(b), english.countStartingWith(a)));
+        for (char letter : letters.subList(0, PREFETCHED_LETTERS)) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            english.prefetch(letter);
+        }
+        Metrics.recordLoadPhase("english prefetch", System.nanoTime() - start);
+    }
+
+    private void onLoaded(String name, long start, Listener listener) {
+        int count = loaded.incrementAndGet();
+        Metrics.recordLoadPhase(name + " total", System.nanoTime() - start);
+        mainHandler.post(() -> listener.onProgress(count, DICTIONARY_COUNT));
+        if (count == DICTIONARY_COUNT) {
+            ready.complete(snapshot.get());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package rkr.tinykeyboard.inputmethod;
+
+import android.inputmethodservice.Keyboard;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Swipe capture for the keyboard view. The view only types the key under the finger,
+ * so this listens to the raw touches first: a touch that starts on a letter key and travels
+ * more than {@link #SWIPE_START} keys becomes a gesture, the view is told to cancel the
+ * key press, and on release the path is decoded on a background worker. Only the latest
+ * gesture is delivered; a new touch drops the result of an older one.
+ */
+class GestureInput implements View.OnTouchListener {
+    interface Decoder {
+        // Runs on the worker; the path is in key units
+        List<String> decode(float[] x, float[] y, int count);
+    }
+
+    interface Callback {
+        void onGesture(List<String> words);
+    }
+
+    // In keys; shorter moves are a sloppy tap, left to the keyboard view
+    private static final float SWIPE_START = 1.0f;
+    private static final int INITIAL_POINTS = 128;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicLong latestGesture = new AtomicLong();
+    private final Decoder decoder;
+    private final Callback callback;
+
+    private LatinKeyboard keyboard;
+    private boolean enabled;
+    private boolean tracking;
+    private boolean swiping;
+    private float keyWidth;
+    private float keyHeight;
+    private float[] x = new float[INITIAL_POINTS];
+    private float[] y = new float[INITIAL_POINTS];
+    private int count;
+
+    GestureInput(Decoder decoder, Callback callback) {
+        this.decoder = decoder;
+        this.callback = callback;
+    }
+
+    /**
+     * Gestures are captured on {@code keyboard} while it is shown, or not at all when null.
+     */
+    void setKeyboard(LatinKeyboard keyboard) {
+        this.keyboard = keyboard;
+        enabled = keyboard != null;
+        tracking = false;
+    }
+
+    void shutdown() {
+        latestGesture.incrementAndGet();
+        worker.shutdownNow();
+    }
+
+    @Override
+    public boolean onTouch(View view, MotionEvent event) {
+        if (!enabled || event.getPointerCount() > 1) {
+            tracking = false;
+            return false;
+        }
+        float touchX = event.getX() - view.getPaddingLeft();
+        float touchY = event.getY() - view.getPaddingTop();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                latestGesture.incrementAndGet();
+                Keyboard.Key key = keyboard.getLetterKeyAt((int) touchX, (int) touchY);
+                tracking = key != null;
+                swiping = false;
+                if (tracking) {
+                    keyWidth = key.width;
+                    keyHeight = key.height;
+                    count = 0;
+                    addPoint(touchX, touchY);
+                }
+                return false;
+            case MotionEvent.ACTION_MOVE:
+                if (!tracking) {
+                    return false;
+                }
+                for (int i = 0; i < event.getHistorySize(); i++) {
+                    addPoint(event.getHistoricalX(i) - view.getPaddingLeft(), event.getHistoricalY(i) - view.getPaddingTop());
+                }
+                addPoint(touchX, touchY);
+                if (!swiping && Math.hypot(x[count - 1] - x[0], y[count - 1] - y[0]) > SWIPE_START) {
+                    swiping = true;
+                    // Take the touch away from the key under the finger, so it types nothing
+                    MotionEvent cancel = MotionEvent.obtain(event);
+                    cancel.setAction(MotionEvent.ACTION_CANCEL);
+                    view.onTouchEvent(cancel);
+                    cancel.recycle();
+                }
+                return swiping;
+            case MotionEvent.ACTION_UP:
+                if (!tracking) {
+                    return false;
+                }
+                tracking = false;
+                if (swiping) {
+                    addPoint(touchX, touchY);
+                    submit(Arrays.copyOf(x, count), Arrays.copyOf(y, count));
+                }
+                return swiping;
+            default:
+                tracking = false;
+                return false;
+        }
+    }
+
+    private void addPoint(float touchX, float touchY) {
+        if (count == x.length) {
+            x = Arrays.copyOf(x, count * 2);
+            y = Arrays.copyOf(y, count * 2);
+        }
+        x[count] = touchX / keyWidth;
+        y[count] = touchY / keyHeight;
+        count++;
+    }
+
+    private void submit(float[] pathX, float[] pathY) {
+        long gesture = latestGesture.get();
+        worker.execute(() -> {
+            if (gesture != latestGesture.get()) {
+                return;
+            }
+            List<String> words = decoder.decode(pathX, pathY, pathX.length);
+            mainHandler.post(() -> {
+                if (gesture == latestGesture.get()) {
+                    callback.onGesture(words);
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,119 @@
+package rkr.tinykeyboard.inputmethod;
+
+import android.inputmethodservice.Keyboard;
+
+import java.util.List;
+
+/**
+ * The keys of a layout sorted into cells half a key wide and tall, so a touch is only
+ * measured against the few keys near it. A touch inside a key gets that key; one in a
+ * gap gets the nearest key within half the narrowest key, and one farther out none.
+ */
+final class KeyGrid {
+    private final List<Keyboard.Key> keys;
+    private final int cellWidth;
+    private final int cellHeight;
+    private final int columns;
+    private final int rows;
+    private final int reach;
+    // The keys near cell i are cellKeys[cellStarts[i]] up to cellKeys[cellStarts[i + 1]]
+    private final int[] cellStarts;
+    private final int[] cellKeys;
+
+    KeyGrid(List<Keyboard.Key> keys, int width, int height) {
+        this.keys = keys;
+        int minWidth = Integer.MAX_VALUE;
+        int minHeight = Integer.MAX_VALUE;
+        for (Keyboard.Key key : keys) {
+            if (key.width > 0) {
+                minWidth = Math.min(minWidth, key.width);
+                minHeight = Math.min(minHeight, key.height);
+            }
+        }
+        if (minWidth == Integer.MAX_VALUE) {
+            minWidth = Math.max(1, width);
+            minHeight = Math.max(1, height);
+        }
+        cellWidth = Math.max(1, minWidth / 2);
+        cellHeight = Math.max(1, minHeight / 2);
+        reach = minWidth / 2;
+        columns = Math.max(1, (width + cellWidth - 1) / cellWidth);
+        rows = Math.max(1, (height + cellHeight - 1) / cellHeight);
+
+        // Count the keys of every cell, then fill them in
+        cellStarts = new int[columns * rows + 1];
+        for (int i = 0; i < keys.size(); i++) {
+            addToCells(i, null);
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellStarts[cell + 1] += cellStarts[cell];
+        }
+        cellKeys = new int[cellStarts[columns * rows]];
+        int[] filled = new int[columns * rows];
+        for (int i = 0; i < keys.size(); i++) {
+            addToCells(i, filled);
+        }
+    }
+
+    /**
+     * Counts key {@code i} in the cells it is near when {@code filled} is null, and
+     * otherwise stores it there.
+     */
+    private void addToCells(int i, int[] filled) {
+        Keyboard.Key key = keys.get(i);
+        if (key.width <= 0) {
+            return;
+        }
+        int firstColumn = clamp((key.x - reach) / cellWidth, columns);
+        int lastColumn = clamp((key.x + key.width - 1 + reach) / cellWidth, columns);
+        int firstRow = clamp((key.y - reach) / cellHeight, rows);
+        int lastRow = clamp((key.y + key.height - 1 + reach) / cellHeight, rows);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int dx = gap(column * cellWidth, (column + 1) * cellWidth - 1, key.x, key.x + key.width - 1);
+                int dy = gap(row * cellHeight, (row + 1) * cellHeight - 1, key.y, key.y + key.height - 1);
+                if (dx * dx + dy * dy > reach * reach) {
+                    continue;
+                }
+                int cell = row * columns + column;
+                if (filled == null) {
+                    cellStarts[cell + 1]++;
+                } else {
+                    cellKeys[cellStarts[cell] + filled[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * The index of the key at or nearest to a point of the keyboard, or -1.
+     */
+    int keyAt(int x, int y) {
+        int cell = clamp(y / cellHeight, rows) * columns + clamp(x / cellWidth, columns);
+        int best = -1;
+        int bestDistance = reach * reach + 1;
+        for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+            Keyboard.Key key = keys.get(cellKeys[i]);
+            int dx = gap(x, x, key.x, key.x + key.width - 1);
+            int dy = gap(y, y, key.y, key.y + key.height - 1);
+            int distance = dx * dx + dy * dy;
+            if (distance < bestDistance) {
+                best = cellKeys[i];
+                bestDistance = distance;
+                if (distance == 0) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    // The distance between two ranges, 0 when they overlap
+    private static int gap(int start, int end, int otherStart, int otherEnd) {
+        return Math.max(0, Math.max(otherStart - end, start - otherEnd));
+    }
+
+    private static int clamp(int index, int count) {
+        return Math.max(0, Math.min(count - 1, index));
+    }
+}
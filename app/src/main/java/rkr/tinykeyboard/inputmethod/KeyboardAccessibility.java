@@ -0,0 +1,201 @@
+package rkr.tinykeyboard.inputmethod;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.inputmethodservice.Keyboard;
+import android.os.Bundle;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewParent;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityManager;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityNodeProvider;
+import android.widget.Button;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exposes the keys of a {@link LatinKeyboardView} to accessibility services as virtual
+ * views, as KeyboardView did: each key is a button named by its label, or by what it does
+ * when its label is a symbol. Explore by touch hovers from key to key, and clicking a key
+ * types it. A virtual view's id is its key's index in the keyboard.
+ */
+final class KeyboardAccessibility extends AccessibilityNodeProvider {
+    private final LatinKeyboardView view;
+    private final AccessibilityManager manager;
+    private final Rect bounds = new Rect();
+    private final int[] location = new int[2];
+    private int hoveredKey = View.NO_ID;
+    private int focusedKey = View.NO_ID;
+
+    KeyboardAccessibility(LatinKeyboardView view) {
+        this.view = view;
+        this.manager = (AccessibilityManager) view.getContext().getSystemService(Context.ACCESSIBILITY_SERVICE);
+    }
+
+    /**
+     * Forgets the keys of the last keyboard, whose ids no longer hold.
+     */
+    void keyboardChanged() {
+        hoveredKey = View.NO_ID;
+        focusedKey = View.NO_ID;
+        if (manager.isEnabled()) {
+            view.sendAccessibilityEvent(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED);
+        }
+    }
+
+    /**
+     * Moves the hover to the key under the pointer. Returns false when touch exploration
+     * is off, leaving the event to the view.
+     */
+    boolean onHoverEvent(MotionEvent event) {
+        if (!manager.isEnabled() || !manager.isTouchExplorationEnabled()) {
+            return false;
+        }
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_HOVER_ENTER:
+            case MotionEvent.ACTION_HOVER_MOVE:
+                setHoveredKey(keyIndexAt(event));
+                return true;
+            case MotionEvent.ACTION_HOVER_EXIT:
+                setHoveredKey(View.NO_ID);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public AccessibilityNodeInfo createAccessibilityNodeInfo(int virtualViewId) {
+        if (virtualViewId == View.NO_ID) {
+            AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain(view);
+            view.onInitializeAccessibilityNodeInfo(info);
+            List<Keyboard.Key> keys = keys();
+            for (int i = 0; i < keys.size(); i++) {
+                if (keys.get(i).width > 0) {
+                    info.addChild(view, i);
+                }
+            }
+            return info;
+        }
+        Keyboard.Key key = key(virtualViewId);
+        if (key == null) {
+            return null;
+        }
+        AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain(view, virtualViewId);
+        info.setPackageName(view.getContext().getPackageName());
+        info.setClassName(Button.class.getName());
+        info.setContentDescription(view.describeKey(key));
+        info.setParent(view);
+        keyBounds(key);
+        info.setBoundsInParent(bounds);
+        view.getLocationOnScreen(location);
+        bounds.offset(location[0], location[1]);
+        info.setBoundsInScreen(bounds);
+        info.setEnabled(true);
+        info.setVisibleToUser(true);
+        info.setClickable(true);
+        info.addAction(AccessibilityNodeInfo.ACTION_CLICK);
+        if (focusedKey == virtualViewId) {
+            info.setAccessibilityFocused(true);
+            info.addAction(AccessibilityNodeInfo.ACTION_CLEAR_ACCESSIBILITY_FOCUS);
+        } else {
+            info.addAction(AccessibilityNodeInfo.ACTION_ACCESSIBILITY_FOCUS);
+        }
+        return info;
+    }
+
+    @Override
+    public boolean performAction(int virtualViewId, int action, Bundle arguments) {
+        if (virtualViewId == View.NO_ID) {
+            return view.performAccessibilityAction(action, arguments);
+        }
+        Keyboard.Key key = key(virtualViewId);
+        if (key == null) {
+            return false;
+        }
+        switch (action) {
+            case AccessibilityNodeInfo.ACTION_CLICK:
+                view.typeKey(key);
+                sendEvent(virtualViewId, AccessibilityEvent.TYPE_VIEW_CLICKED);
+                return true;
+            case AccessibilityNodeInfo.ACTION_ACCESSIBILITY_FOCUS:
+                if (focusedKey == virtualViewId) {
+                    return false;
+                }
+                int previous = focusedKey;
+                focusedKey = virtualViewId;
+                if (previous != View.NO_ID) {
+                    sendEvent(previous, AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUS_CLEARED);
+                }
+                sendEvent(virtualViewId, AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUSED);
+                return true;
+            case AccessibilityNodeInfo.ACTION_CLEAR_ACCESSIBILITY_FOCUS:
+                if (focusedKey != virtualViewId) {
+                    return false;
+                }
+                focusedKey = View.NO_ID;
+                sendEvent(virtualViewId, AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUS_CLEARED);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void setHoveredKey(int index) {
+        if (index == hoveredKey) {
+            return;
+        }
+        int previous = hoveredKey;
+        hoveredKey = index;
+        // Entering the new key before leaving the old one is how the framework orders them
+        if (index != View.NO_ID) {
+            sendEvent(index, AccessibilityEvent.TYPE_VIEW_HOVER_ENTER);
+        }
+        if (previous != View.NO_ID) {
+            sendEvent(previous, AccessibilityEvent.TYPE_VIEW_HOVER_EXIT);
+        }
+    }
+
+    private void sendEvent(int virtualViewId, int type) {
+        ViewParent parent = view.getParent();
+        Keyboard.Key key = key(virtualViewId);
+        if (parent == null || key == null || !manager.isEnabled()) {
+            return;
+        }
+        AccessibilityEvent event = AccessibilityEvent.obtain(type);
+        event.setPackageName(view.getContext().getPackageName());
+        event.setClassName(Button.class.getName());
+        event.setContentDescription(view.describeKey(key));
+        event.setEnabled(true);
+        event.setSource(view, virtualViewId);
+        parent.requestSendAccessibilityEvent(view, event);
+    }
+
+    private int keyIndexAt(MotionEvent event) {
+        LatinKeyboard keyboard = view.getKeyboard();
+        if (keyboard == null) {
+            return View.NO_ID;
+        }
+        Keyboard.Key key = keyboard.getKeyAt((int) event.getX() - view.getPaddingLeft(), (int) event.getY() - view.getPaddingTop());
+        return key == null ? View.NO_ID : keys().indexOf(key);
+    }
+
+    private void keyBounds(Keyboard.Key key) {
+        int left = view.getPaddingLeft() + key.x;
+        int top = view.getPaddingTop() + key.y;
+        bounds.set(left, top, left + key.width, top + key.height);
+    }
+
+    private List<Keyboard.Key> keys() {
+        LatinKeyboard keyboard = view.getKeyboard();
+        return keyboard == null ? Collections.<Keyboard.Key>emptyList() : keyboard.getKeys();
+    }
+
+    private Keyboard.Key key(int virtualViewId) {
+        List<Keyboard.Key> keys = keys();
+        return virtualViewId >= 0 && virtualViewId < keys.size() ? keys.get(virtualViewId) : null;
+    }
+}
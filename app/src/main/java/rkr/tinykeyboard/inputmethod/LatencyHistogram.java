@@ -0,0 +1,70 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in power-of-two microsecond buckets. Recording is
+ * two atomic increments and a max update, cheap enough for every keystroke; percentiles
+ * are reported as the upper bound of their bucket, so within a factor of two.
+ */
+class LatencyHistogram {
+    // Bucket i holds durations below 2^i microseconds; the last one also holds longer ones
+    private static final int BUCKET_COUNT = 32;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // Lost a race with another writer; retry against its value
+        }
+    }
+
+    /**
+     * Upper bound in microseconds of the bucket holding the {@code percentile} (0..100).
+     */
+    long percentileMicros(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += buckets.get(bucket);
+            if (seen >= rank) {
+                return 1L << bucket;
+            }
+        }
+        return 1L << (BUCKET_COUNT - 1);
+    }
+
+    void reset() {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            buckets.set(bucket, 0);
+        }
+        count.set(0);
+        maxNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return name + ": n=" + count.get()
+                + " p50<" + percentileMicros(50) + "us"
+                + " p90<" + percentileMicros(90) + "us"
+                + " p99<" + percentileMicros(99) + "us"
+                + " max=" + maxNanos.get() / 1000 + "us";
+    }
+}
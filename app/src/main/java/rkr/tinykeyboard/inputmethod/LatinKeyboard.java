@@ -22,6 +22,8 @@ import android.content.res.XmlResourceParser;
 import android.inputmethodservice.Keyboard;
 import android.view.inputmethod.EditorInfo;
 
+import java.util.List;
+
 public class LatinKeyboard extends Keyboard {
 
     public static final int KEYCODE_LANGUAGE_SWITCH = -101;
@@ -31,6 +33,8 @@ public class LatinKeyboard extends Keyboard {
     private Key mLanguageSwitchKey;
     private Key mSavedSpaceKey;
     private Key mSavedLanguageSwitchKey;
+    // Built on the first touch after the key geometry changes
+    private KeyGrid mKeyGrid;
 
     public LatinKeyboard(Context context, int xmlLayoutResId) {
         super(context, xmlLayoutResId);
@@ -63,6 +67,18 @@ public class LatinKeyboard extends Keyboard {
             mLanguageSwitchKey.width = 0;
             mLanguageSwitchKey.label = null;
         }
+        mKeyGrid = null;
+    }
+
+    /**
+     * Labels the language switch key, shown or hidden, and returns it for redrawing.
+     */
+    Key setLanguageSwitchLabel(CharSequence label) {
+        mSavedLanguageSwitchKey.label = label;
+        if (mLanguageSwitchKey.width > 0) {
+            mLanguageSwitchKey.label = label;
+        }
+        return mLanguageSwitchKey;
     }
 
     void setImeOptions(Resources res, int options) {
@@ -88,4 +104,62 @@ public class LatinKeyboard extends Keyboard {
                 break;
         }
     }
+
+    /**
+     * Which letter keys are neighbours in this layout, for scoring typos.
+     */
+    KeyProximity getKeyProximity() {
+        int size = getKeys().size();
+        int[] codes = new int[size];
+        float[] x = new float[size];
+        float[] y = new float[size];
+        getLetterCentres(codes, x, y);
+        return new KeyProximity(codes, x, y);
+    }
+
+    /**
+     * A swipe decoder for the letter keys of this layout.
+     */
+    GestureDecoder newGestureDecoder() {
+        int size = getKeys().size();
+        int[] codes = new int[size];
+        float[] x = new float[size];
+        float[] y = new float[size];
+        getLetterCentres(codes, x, y);
+        return new GestureDecoder(codes, x, y);
+    }
+
+    /**
+     * Fills in the code of every key, -1 for keys that are not visible letters, and its
+     * centre in key widths and heights.
+     */
+    private void getLetterCentres(int[] codes, float[] x, float[] y) {
+        List<Key> keys = getKeys();
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get(i);
+            codes[i] = Character.isLetter(key.codes[0]) && key.width > 0 ? key.codes[0] : -1;
+            x[i] = (key.x + key.width / 2f) / Math.max(1, key.width);
+            y[i] = (key.y + key.height / 2f) / Math.max(1, key.height);
+        }
+    }
+
+    /**
+     * The key at a point of the keyboard, or the nearest one to a point in a gap; null
+     * when no key is close.
+     */
+    Key getKeyAt(int x, int y) {
+        if (mKeyGrid == null) {
+            mKeyGrid = new KeyGrid(getKeys(), getMinWidth(), getHeight());
+        }
+        int index = mKeyGrid.keyAt(x, y);
+        return index == -1 ? null : getKeys().get(index);
+    }
+
+    /**
+     * The letter key at a point of the keyboard, or null.
+     */
+    Key getLetterKeyAt(int x, int y) {
+        Key key = getKeyAt(x, y);
+        return key != null && Character.isLetter(key.codes[0]) ? key : null;
+    }
 }
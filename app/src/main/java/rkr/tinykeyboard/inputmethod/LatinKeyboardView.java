@@ -0,0 +1,391 @@
+package rkr.tinykeyboard.inputmethod;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.inputmethodservice.Keyboard;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.accessibility.AccessibilityNodeProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws a LatinKeyboard and types its keys, in place of the deprecated KeyboardView.
+ * The keys are drawn once into a cached bitmap, and a key whose label or state changes
+ * is redrawn there alone; the pressed key is drawn over the bitmap rather than into it,
+ * so a press leaves the bitmap, and its texture, untouched. Only the rectangles of the
+ * keys that changed are invalidated. Touches find their key in the keyboard's
+ * {@link KeyGrid}, and accessibility services see the keys through
+ * {@link KeyboardAccessibility}.
+ *
+ * <p>Keys are typed on release, except repeatable ones, which type on press and then
+ * repeat while held. A second finger types the key held by the first.
+ */
+public class LatinKeyboardView extends View {
+    interface OnKeyListener {
+        void onKey(int primaryCode);
+    }
+
+    private static final int REPEAT_START_DELAY_MS = 400;
+    private static final int REPEAT_INTERVAL_MS = 50;
+
+    private final Paint keyPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF keyRect = new RectF();
+    private final Rect dirtyRect = new Rect();
+    private final int backgroundColor;
+    private final int keyColor;
+    private final int keyOnColor;
+    private final int keyPressedColor;
+    private final float keyInset;
+    private final float keyRadius;
+    private final float labelSize;
+    private final Runnable repeatKey = this::repeatKey;
+    private final Choreographer.FrameCallback recordFeedback = this::recordFeedback;
+    private final KeyboardAccessibility accessibility;
+
+    private OnKeyListener listener;
+    private LatinKeyboard keyboard;
+    private Bitmap keysBitmap;
+    private Canvas keysCanvas;
+    private boolean allKeysDirty = true;
+    private final List<Keyboard.Key> dirtyKeys = new ArrayList<>();
+
+    private Keyboard.Key pressedKey;
+    private int pressedPointerId;
+    private boolean repeating;
+    // When the last press was handled, for the feedback metric; 0 once recorded
+    private long pressStart;
+
+    public LatinKeyboardView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        float density = getResources().getDisplayMetrics().density;
+        keyInset = 2 * density;
+        keyRadius = 4 * density;
+        labelSize = getResources().getDimension(R.dimen.key_text_size);
+        backgroundColor = context.getColor(R.color.keyboard_background);
+        keyColor = context.getColor(R.color.key);
+        keyOnColor = context.getColor(R.color.key_on);
+        keyPressedColor = context.getColor(R.color.key_pressed);
+        labelPaint.setColor(context.getColor(R.color.key_label));
+        labelPaint.setTextAlign(Paint.Align.CENTER);
+        accessibility = new KeyboardAccessibility(this);
+    }
+
+    void setOnKeyListener(OnKeyListener listener) {
+        this.listener = listener;
+    }
+
+    void setKeyboard(LatinKeyboard keyboard) {
+        closing();
+        if (this.keyboard == null || keyboard.getMinWidth() != this.keyboard.getMinWidth() || keyboard.getHeight() != this.keyboard.getHeight()) {
+            requestLayout();
+        }
+        this.keyboard = keyboard;
+        invalidateAllKeys();
+        accessibility.keyboardChanged();
+    }
+
+    LatinKeyboard getKeyboard() {
+        return keyboard;
+    }
+
+    void setShifted(boolean shifted) {
+        if (keyboard != null && keyboard.setShifted(shifted)) {
+            // Letters change case and the shift key lights up
+            for (Keyboard.Key key : keyboard.getKeys()) {
+                if (key.codes[0] == Keyboard.KEYCODE_SHIFT || isLetterLabel(key.label)) {
+                    invalidateKey(key);
+                }
+            }
+        }
+    }
+
+    boolean isShifted() {
+        return keyboard != null && keyboard.isShifted();
+    }
+
+    /**
+     * Redraws {@code key}, which must be a key of the current keyboard, on the next frame.
+     */
+    void invalidateKey(Keyboard.Key key) {
+        if (!allKeysDirty && !dirtyKeys.contains(key)) {
+            dirtyKeys.add(key);
+        }
+        invalidateKeyRect(key);
+    }
+
+    void invalidateAllKeys() {
+        allKeysDirty = true;
+        dirtyKeys.clear();
+        invalidate();
+    }
+
+    /**
+     * Drops the pressed key, without typing it, and stops any repeat.
+     */
+    void closing() {
+        removeCallbacks(repeatKey);
+        repeating = false;
+        if (pressedKey != null) {
+            invalidateKeyRect(pressedKey);
+            pressedKey = null;
+        }
+    }
+
+    // Deprecated since API 28, where hardware rendering redraws the whole view anyway;
+    // software layers and older releases still redraw only the key
+    @SuppressWarnings("deprecation")
+    private void invalidateKeyRect(Keyboard.Key key) {
+        int left = getPaddingLeft() + key.x;
+        int top = getPaddingTop() + key.y;
+        dirtyRect.set(left, top, left + key.width, top + key.height);
+        invalidate(dirtyRect);
+    }
+
+    /**
+     * What {@code key} is called to accessibility services: what it does when its label is
+     * a symbol, else its label as shown.
+     */
+    CharSequence describeKey(Keyboard.Key key) {
+        switch (key.codes[0]) {
+            case Keyboard.KEYCODE_SHIFT:
+                return getContext().getString(R.string.key_description_shift);
+            case Keyboard.KEYCODE_DELETE:
+                return getContext().getString(R.string.key_description_delete);
+            case Keyboard.KEYCODE_DONE:
+                return getContext().getString(R.string.key_description_enter);
+            case Keyboard.KEYCODE_MODE_CHANGE:
+                return getContext().getString(R.string.key_description_mode_change);
+            case LatinKeyboard.KEYCODE_LANGUAGE_SWITCH:
+                return getContext().getString(R.string.key_description_language);
+            case ' ':
+                return getContext().getString(R.string.key_description_space);
+            default:
+                if (key.label == null) {
+                    return key.text;
+                }
+                return isShifted() && isLetterLabel(key.label) ? key.label.toString().toUpperCase() : key.label;
+        }
+    }
+
+    /**
+     * Types {@code key} as if it were tapped, for accessibility services that click it.
+     */
+    void typeKey(Keyboard.Key key) {
+        if (listener != null) {
+            listener.onKey(key.codes[0]);
+        }
+    }
+
+    @Override
+    public AccessibilityNodeProvider getAccessibilityNodeProvider() {
+        return accessibility;
+    }
+
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent event) {
+        return accessibility.onHoverEvent(event) || super.dispatchHoverEvent(event);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int paddingWidth = getPaddingLeft() + getPaddingRight();
+        int paddingHeight = getPaddingTop() + getPaddingBottom();
+        if (keyboard == null) {
+            setMeasuredDimension(paddingWidth, paddingHeight);
+            return;
+        }
+        int width = keyboard.getMinWidth() + paddingWidth;
+        if (MeasureSpec.getSize(widthMeasureSpec) < width + 10) {
+            width = MeasureSpec.getSize(widthMeasureSpec);
+        }
+        setMeasuredDimension(width, keyboard.getHeight() + paddingHeight);
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        releaseBitmap();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        closing();
+        releaseBitmap();
+    }
+
+    private void releaseBitmap() {
+        if (keysBitmap != null) {
+            keysBitmap.recycle();
+            keysBitmap = null;
+            keysCanvas = null;
+        }
+        allKeysDirty = true;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (keyboard == null || getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        if (keysBitmap == null) {
+            keysBitmap = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+            keysCanvas = new Canvas(keysBitmap);
+            allKeysDirty = true;
+        }
+        if (allKeysDirty) {
+            keysCanvas.drawColor(backgroundColor, PorterDuff.Mode.SRC);
+            for (Keyboard.Key key : keyboard.getKeys()) {
+                drawKey(keysCanvas, key, false);
+            }
+            allKeysDirty = false;
+            dirtyKeys.clear();
+        } else {
+            for (int i = 0; i < dirtyKeys.size(); i++) {
+                Keyboard.Key key = dirtyKeys.get(i);
+                // Clear the cell first, the old label may reach past the new one
+                keysCanvas.save();
+                keysCanvas.clipRect(getPaddingLeft() + key.x, getPaddingTop() + key.y, getPaddingLeft() + key.x + key.width, getPaddingTop() + key.y + key.height);
+                keysCanvas.drawColor(backgroundColor, PorterDuff.Mode.SRC);
+                keysCanvas.restore();
+                drawKey(keysCanvas, key, false);
+            }
+            dirtyKeys.clear();
+        }
+        canvas.drawBitmap(keysBitmap, 0, 0, null);
+        if (pressedKey != null) {
+            drawKey(canvas, pressedKey, true);
+        }
+    }
+
+    private void drawKey(Canvas canvas, Keyboard.Key key, boolean pressed) {
+        if (key.width <= 0) {
+            return;
+        }
+        float left = getPaddingLeft() + key.x;
+        float top = getPaddingTop() + key.y;
+        keyRect.set(left + keyInset, top + keyInset, left + key.width - keyInset, top + key.height - keyInset);
+        // Sticky keys, such as shift, are on while they hold
+        keyPaint.setColor(pressed ? keyPressedColor : key.on ? keyOnColor : keyColor);
+        canvas.drawRoundRect(keyRect, keyRadius, keyRadius, keyPaint);
+
+        if (key.label == null || key.label.length() == 0) {
+            return;
+        }
+        String label = key.label.toString();
+        if (keyboard.isShifted() && isLetterLabel(key.label)) {
+            label = label.toUpperCase();
+        }
+        labelPaint.setTextSize(labelSize);
+        float available = keyRect.width() - 2 * keyInset;
+        float width = labelPaint.measureText(label);
+        if (width > available) {
+            labelPaint.setTextSize(labelSize * available / width);
+        }
+        // Centre the label between its ascent and descent
+        float baseline = keyRect.centerY() - (labelPaint.ascent() + labelPaint.descent()) / 2;
+        canvas.drawText(label, keyRect.centerX(), baseline, labelPaint);
+    }
+
+    private static boolean isLetterLabel(CharSequence label) {
+        return label != null && label.length() == 1 && Character.isLetter(label.charAt(0));
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (keyboard == null) {
+            return false;
+        }
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                press(event, 0);
+                return true;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // Typing fast, the next finger lands before the last one lifts
+                release();
+                press(event, event.getActionIndex());
+                return true;
+            case MotionEvent.ACTION_MOVE: {
+                int index = event.findPointerIndex(pressedPointerId);
+                if (pressedKey != null && !repeating && index != -1) {
+                    Keyboard.Key key = keyAt(event, index);
+                    if (key != null && key != pressedKey) {
+                        // The finger slid onto a neighbour; that is the key it types
+                        invalidateKeyRect(pressedKey);
+                        pressedKey = key;
+                        invalidateKeyRect(key);
+                    }
+                }
+                return true;
+            }
+            case MotionEvent.ACTION_POINTER_UP:
+                if (event.getPointerId(event.getActionIndex()) == pressedPointerId) {
+                    release();
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                release();
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                closing();
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    private Keyboard.Key keyAt(MotionEvent event, int index) {
+        return keyboard.getKeyAt((int) event.getX(index) - getPaddingLeft(), (int) event.getY(index) - getPaddingTop());
+    }
+
+    private void press(MotionEvent event, int index) {
+        closing();
+        pressedKey = keyAt(event, index);
+        pressedPointerId = event.getPointerId(index);
+        if (pressedKey == null) {
+            return;
+        }
+        pressStart = System.nanoTime();
+        Choreographer.getInstance().postFrameCallback(recordFeedback);
+        invalidateKeyRect(pressedKey);
+        if (pressedKey.repeatable) {
+            repeating = true;
+            listener.onKey(pressedKey.codes[0]);
+            postDelayed(repeatKey, REPEAT_START_DELAY_MS);
+        }
+    }
+
+    private void release() {
+        Keyboard.Key key = pressedKey;
+        boolean repeated = repeating;
+        closing();
+        if (key != null && !repeated) {
+            listener.onKey(key.codes[0]);
+        }
+    }
+
+    private void repeatKey() {
+        if (pressedKey != null && repeating) {
+            listener.onKey(pressedKey.codes[0]);
+            postDelayed(repeatKey, REPEAT_INTERVAL_MS);
+        }
+    }
+
+    // The frame after a press is the one that draws it pressed
+    private void recordFeedback(long frameTimeNanos) {
+        if (pressStart != 0) {
+            Metrics.KEY_FEEDBACK.record(System.nanoTime() - pressStart);
+            pressStart = 0;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hot-path timings and counters for comparing builds under real typing. Dump them with
+ * {@code adb shell dumpsys activity service rkr.tinykeyboard.inputmethod/.SoftKeyboard},
+ * and add {@code reset} to start a new measurement.
+ */
+final class Metrics {
+    /** From a key press to the first frame after its candidates reach the adapter. */
+    static final LatencyHistogram KEYSTROKE = new LatencyHistogram("keystroke to candidates frame");
+    /** From a key going down to the frame that draws it pressed. */
+    static final LatencyHistogram KEY_FEEDBACK = new LatencyHistogram("key down to pressed frame");
+    static final LatencyHistogram ENGLISH_QUERY = new LatencyHistogram("english query");
+    static final LatencyHistogram PINYIN_QUERY = new LatencyHistogram("pinyin query");
+    static final LatencyHistogram MIXED_QUERY = new LatencyHistogram("mixed query");
+    static final LatencyHistogram SET_COMPOSING_TEXT = new LatencyHistogram("setComposingText");
+    static final LatencyHistogram GESTURE_DECODE = new LatencyHistogram("gesture decode");
+    static final AtomicLong CANDIDATE_BINDS = new AtomicLong();
+    static final AtomicLong CANDIDATE_VIEWS_CREATED = new AtomicLong();
+    static final AtomicLong CANDIDATE_CACHE_HITS = new AtomicLong();
+    static final AtomicLong CANDIDATE_CACHE_MISSES = new AtomicLong();
+
+    // Dictionary load phases in ms; the first load is kept, not a later restore
+    private static final Map<String, Long> LOAD_PHASES = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    static LatencyHistogram query(InputMode mode) {
+        switch (mode) {
+            case Pinyin:
+                return PINYIN_QUERY;
+            case Mixed:
+                return MIXED_QUERY;
+            default:
+                return ENGLISH_QUERY;
+        }
+    }
+
+    static void recordLoadPhase(String phase, long nanos) {
+        LOAD_PHASES.putIfAbsent(phase, nanos / 1000000);
+    }
+
+    static void dump(PrintWriter writer, String[] args) {
+        writer.println("Hallelujah metrics");
+        writer.println("  " + KEYSTROKE);
+        writer.println("  " + KEY_FEEDBACK);
+        writer.println("  " + ENGLISH_QUERY);
+        writer.println("  " + PINYIN_QUERY);
+        writer.println("  " + MIXED_QUERY);
+        writer.println("  " + SET_COMPOSING_TEXT);
+        writer.println("  " + GESTURE_DECODE);
+        writer.println("  candidate binds: " + CANDIDATE_BINDS.get() + ", views created: " + CANDIDATE_VIEWS_CREATED.get());
+        writer.println("  candidate cache hits: " + CANDIDATE_CACHE_HITS.get() + ", misses: " + CANDIDATE_CACHE_MISSES.get());
+        for (Map.Entry<String, Long> phase : LOAD_PHASES.entrySet()) {
+            writer.println("  load " + phase.getKey() + ": " + phase.getValue() + " ms");
+        }
+        if (args != null && args.length > 0 && args[0].equals("reset")) {
+            KEYSTROKE.reset();
+            KEY_FEEDBACK.reset();
+            ENGLISH_QUERY.reset();
+            PINYIN_QUERY.reset();
+            MIXED_QUERY.reset();
+            SET_COMPOSING_TEXT.reset();
+            GESTURE_DECODE.reset();
+            CANDIDATE_BINDS.set(0);
+            CANDIDATE_VIEWS_CREATED.set(0);
+            CANDIDATE_CACHE_HITS.set(0);
+            CANDIDATE_CACHE_MISSES.set(0);
+            writer.println("  (reset)");
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package rkr.tinykeyboard.inputmethod;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.os.Bundle;
+import android.widget.Toast;
+
+/**
+ * The keyboard's settings, opened from the system's input method settings. Its one
+ * setting forgets the words the keyboard has learned from typing.
+ */
+public class SettingsActivity extends Activity {
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.settings);
+        findViewById(R.id.clearLearnedWords).setOnClickListener(view -> new AlertDialog.Builder(this)
+                .setMessage(R.string.clear_learned_words_confirm)
+                .setPositiveButton(R.string.clear_learned_words, (dialog, which) -> clearLearnedWords())
+                .setNegativeButton(android.R.string.cancel, null)
+                .show());
+    }
+
+    private void clearLearnedWords() {
+        SoftKeyboard.clearLearnedWords(getApplicationContext());
+        Toast.makeText(this, R.string.learned_words_cleared, Toast.LENGTH_SHORT).show();
+    }
+}
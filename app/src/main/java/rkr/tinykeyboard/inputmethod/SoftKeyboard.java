@@ -16,14 +16,16 @@
 
 package rkr.tinykeyboard.inputmethod;
 
+import android.app.ActivityManager;
 import android.app.Dialog;
 import android.content.Context;
 import android.inputmethodservice.InputMethodService;
 import android.inputmethodservice.Keyboard;
-import android.inputmethodservice.KeyboardView;
 import android.os.Build;
 import android.os.IBinder;
 import android.text.InputType;
+import android.util.Log;
+import android.view.Choreographer;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -35,28 +37,25 @@ import android.view.inputmethod.InputMethodManager;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-
-import org.apache.commons.collections4.trie.PatriciaTrie;
-
-import java.lang.reflect.Type;
-import java.util.ArrayList;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class SoftKeyboard extends InputMethodService
-        implements KeyboardView.OnKeyboardActionListener {
+        implements LatinKeyboardView.OnKeyListener {
+
+    private static final String TAG = "hallelujah";
+    private static final int MAX_GESTURE_CANDIDATES = 8;
+    private static final String USER_DICT_FILE = "user_dict.log";
+
+    // The learned words of the running keyboard, for the settings screen in this process
+    private static volatile UserDict runningUserDict;
 
     private InputMethodManager mInputMethodManager;
 
-    private KeyboardView mInputView;
+    private LatinKeyboardView mInputView;
     private RecyclerView candidatesRecyclerView;
     private int mLastDisplayWidth;
     private boolean mCapsLock;
@@ -68,57 +67,90 @@ public class SoftKeyboard extends InputMethodService
 
     private LatinKeyboard mCurKeyboard;
 
-    private ExecutorService executorService;
-    private StringBuilder compositionText = new StringBuilder();
-    private PatriciaTrie<Long> trie;
-    private List<String> candidates = new ArrayList<>();
-    private Map<String, List<String>> pinyinMap = new HashMap<>();
+    private CandidateQueryScheduler candidateQueryScheduler;
+    private CandidateAdapter candidateAdapter;
+    private final StringBuilder compositionText = new StringBuilder();
+    // The composition in lower case, rebuilt in place so a keystroke makes one String
+    private final StringBuilder queryText = new StringBuilder();
+    private DictionaryManager dictionaryManager;
+    private UserDict userDict;
+    // Only used on the candidate query worker; it is not thread safe.
+    private CandidateGenerator candidateGenerator;
+    // Set on the main thread when the layout is built, read by the query worker.
+    private volatile KeyProximity keyProximity = KeyProximity.uniform();
+    // Set on the main thread when the layout is built, only used on the gesture worker.
+    private volatile GestureDecoder gestureDecoder;
+    private GestureInput gestureInput;
+    // Whether the composition is a whole word from a swipe rather than typed letters.
+    private boolean gestureComposing;
     private InputMode inputMode = InputMode.English;
+    // The last committed word, for next-word predictions; null at the start of a field.
+    private String previousWord;
+    // Whether the current field lets committed words be learned; false for passwords.
+    private boolean learning;
+    // When the key whose candidates are pending was pressed; 0 when none is pending.
+    private long keystrokeStart;
 
     @Override
     public void onCreate() {
         super.onCreate();
         mInputMethodManager = (InputMethodManager) getSystemService(INPUT_METHOD_SERVICE);
-
-        if (trie == null) {
-            executorService = Executors.newSingleThreadExecutor();
-            loadDictionaryAsync();
+        candidateQueryScheduler = new CandidateQueryScheduler(this::queryCandidates, this::updateCandidatesList);
+        candidateAdapter = new CandidateAdapter(new CandidateSelectionHandler(this));
+        gestureInput = new GestureInput(this::decodeGesture, this::onGesture);
+
+        dictionaryManager = new DictionaryManager();
+        dictionaryManager.load(getApplicationContext(), this::onDictionaryProgress);
+        dictionaryManager.whenReady().thenRun(() -> Log.i(TAG, "Dictionaries ready"));
+        userDict = new UserDict(new File(getFilesDir(), USER_DICT_FILE));
+        userDict.load();
+        runningUserDict = userDict;
+        candidateGenerator = new CandidateGenerator(userDict);
+    }
+
+    private void onDictionaryProgress(int loaded, int total) {
+        // Candidates shown while loading may be raw input only; refresh them now.
+        if (compositionText.length() > 0) {
+            candidateQueryScheduler.submit(lowerCaseComposition(), inputMode);
         }
     }
 
-    private void loadDictionaryAsync() {
-        executorService.execute(() -> {
-            Gson gson = new Gson();
-            String jsonString = DictUtil.getContentFromAssets(getApplicationContext(), "google_227800_words.json");
-            Type mapType = new TypeToken<Map<String, Long>>() {
-            }.getType();
-            Map<String, Long> map = gson.fromJson(jsonString, mapType);
-
-            trie = new PatriciaTrie<>();
-            for (Map.Entry<String, Long> entry : map.entrySet()) {
-                trie.put(entry.getKey(), entry.getValue());
-            }
-
-            String pinyinJson = DictUtil.getContentFromAssets(getApplicationContext(), "cedict.json");
-            Type pinyinType = new TypeToken<Map<String, List<String>>>() {
-            }.getType();
-            pinyinMap = gson.fromJson(pinyinJson, pinyinType);
-
-            String pinyinTxt = DictUtil.getContentFromAssets(getApplicationContext(), "google_pinyin_rawdict_utf8_65105_freq.txt");
-            PinyinDict.buildPinyinDict(pinyinTxt);
-
-            System.out.println("Hallelujah dictionary is ready now!");
-        });
-    }
-
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (executorService != null) {
-            executorService.shutdownNow();
+        dictionaryManager.shutdown();
+        candidateQueryScheduler.shutdown();
+        gestureInput.shutdown();
+        runningUserDict = null;
+        userDict.close();
+    }
+
+    /**
+     * Forgets the learned words, in the running keyboard if there is one and on disk.
+     */
+    static void clearLearnedWords(Context context) {
+        UserDict userDict = runningUserDict;
+        if (userDict != null) {
+            userDict.clear();
+        } else {
+            userDict = new UserDict(new File(context.getFilesDir(), USER_DICT_FILE));
+            userDict.clear();
+            userDict.close();
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        dictionaryManager.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        dictionaryManager.onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
     @Override
     public View onCreateCandidatesView() {
         LayoutInflater inflater = getLayoutInflater();
@@ -127,6 +159,10 @@ public class SoftKeyboard extends InputMethodService
         candidatesRecyclerView = candidatesView.findViewById(R.id.candidatesRecyclerView);
         GridLayoutManager layoutManager = new GridLayoutManager(this, numberOfColumns());
         candidatesRecyclerView.setLayoutManager(layoutManager);
+        // Cells are rebound in place; fading them on every keystroke only costs frames.
+        candidatesRecyclerView.setItemAnimator(null);
+        candidatesRecyclerView.setAdapter(candidateAdapter);
+        candidateAdapter.prewarm(candidatesRecyclerView);
 
         return candidatesView;
     }
@@ -142,9 +178,17 @@ public class SoftKeyboard extends InputMethodService
 
     private void updateCandidatesList(List<String> candidates) {
         setCandidatesViewShown(!candidates.isEmpty());
-        CandidateSelectionHandler selectionHandler = new CandidateSelectionHandler(this);
-        CandidateAdapter adapter = new CandidateAdapter(candidates, selectionHandler);
-        candidatesRecyclerView.setAdapter(adapter);
+        long start = keystrokeStart;
+        keystrokeStart = 0;
+        candidateAdapter.submitCandidates(candidates, start == 0 ? null : () ->
+                Choreographer.getInstance().postFrameCallback(frameTimeNanos -> Metrics.KEYSTROKE.record(System.nanoTime() - start)));
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(fd, writer, args);
+        Metrics.dump(writer, args);
+        writer.println("  dictionary queries by tier: " + dictionaryManager.queryCounts());
     }
 
     private int numberOfColumns() {
@@ -179,15 +223,17 @@ public class SoftKeyboard extends InputMethodService
             mLastDisplayWidth = displayWidth;
         }
         mQwertyKeyboard = new LatinKeyboard(displayContext, R.xml.qwerty);
+        keyProximity = mQwertyKeyboard.getKeyProximity();
+        gestureDecoder = mQwertyKeyboard.newGestureDecoder();
         mSymbolsKeyboard = new LatinKeyboard(displayContext, R.xml.symbols);
         mSymbolsShiftedKeyboard = new LatinKeyboard(displayContext, R.xml.symbols_shift);
     }
 
     @Override
     public View onCreateInputView() {
-        mInputView = (KeyboardView) getLayoutInflater().inflate(R.layout.input, null);
-        mInputView.setOnKeyboardActionListener(this);
-        mInputView.setPreviewEnabled(false);
+        mInputView = (LatinKeyboardView) getLayoutInflater().inflate(R.layout.input, null);
+        mInputView.setOnKeyListener(this);
+        mInputView.setOnTouchListener(gestureInput);
         setLatinKeyboard(mQwertyKeyboard);
         return mInputView;
     }
@@ -198,6 +244,15 @@ public class SoftKeyboard extends InputMethodService
             nextKeyboard.setLanguageSwitchKeyVisibility(shouldSupportLanguageSwitchKey);
         }
         mInputView.setKeyboard(nextKeyboard);
+        updateGestureInput();
+    }
+
+    /**
+     * Swipes spell English words, so they are only read on the letters, and not in pinyin mode.
+     */
+    private void updateGestureInput() {
+        LatinKeyboard keyboard = mInputView.getKeyboard();
+        gestureInput.setKeyboard(keyboard == mQwertyKeyboard && inputMode != InputMode.Pinyin ? keyboard : null);
     }
 
     @Override
@@ -207,6 +262,8 @@ public class SoftKeyboard extends InputMethodService
         // https://issuetracker.google.com/issues/246132117
         setCandidatesViewShown(true);
 
+        learning = allowsLearning(attribute);
+
         // We are now going to initialize our state based on the type of
         // text being edited.
         switch (attribute.inputType & InputType.TYPE_MASK_CLASS) {
@@ -233,7 +290,8 @@ public class SoftKeyboard extends InputMethodService
     @Override
     public void onFinishInput() {
         super.onFinishInput();
-        compositionText = new StringBuilder();
+        compositionText.setLength(0);
+        previousWord = null;
 
         mCurKeyboard = mQwertyKeyboard;
         if (mInputView != null) {
@@ -247,6 +305,37 @@ public class SoftKeyboard extends InputMethodService
         // Apply the selected keyboard to the input view.
         setLatinKeyboard(mCurKeyboard);
         mInputView.closing();
+
+        // Trimmed dictionaries come back once the system is no longer short of memory
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        ((ActivityManager) getSystemService(ACTIVITY_SERVICE)).getMemoryInfo(memoryInfo);
+        if (!memoryInfo.lowMemory) {
+            dictionaryManager.restore(getApplicationContext());
+        }
+    }
+
+    /**
+     * Whether words committed into a field may be learned: not in passwords, nor where the
+     * app asks for no suggestions or no personalized learning.
+     */
+    private static boolean allowsLearning(EditorInfo attribute) {
+        int variation = attribute.inputType & InputType.TYPE_MASK_VARIATION;
+        switch (attribute.inputType & InputType.TYPE_MASK_CLASS) {
+            case InputType.TYPE_CLASS_TEXT:
+                if (variation == InputType.TYPE_TEXT_VARIATION_PASSWORD
+                        || variation == InputType.TYPE_TEXT_VARIATION_VISIBLE_PASSWORD
+                        || variation == InputType.TYPE_TEXT_VARIATION_WEB_PASSWORD
+                        || (attribute.inputType & InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS) != 0) {
+                    return false;
+                }
+                break;
+            case InputType.TYPE_CLASS_NUMBER:
+                if (variation == InputType.TYPE_NUMBER_VARIATION_PASSWORD) {
+                    return false;
+                }
+                break;
+        }
+        return (attribute.imeOptions & EditorInfo.IME_FLAG_NO_PERSONALIZED_LEARNING) == 0;
     }
 
     private void updateShiftKeyState(EditorInfo attr) {
@@ -265,9 +354,11 @@ public class SoftKeyboard extends InputMethodService
         getCurrentInputConnection().sendKeyEvent(new KeyEvent(KeyEvent.ACTION_UP, keyEventCode));
     }
 
-    // Implementation of KeyboardViewListener
+    // Implementation of LatinKeyboardView.OnKeyListener
 
-    public void onKey(int primaryCode, int[] keyCodes) {
+    public void onKey(int primaryCode) {
+        // Only keys that query candidates are timed; the rest must not leave a start behind
+        keystrokeStart = 0;
         if (primaryCode == Keyboard.KEYCODE_DONE) {
             commitInput();
             keyDownUp(KeyEvent.KEYCODE_ENTER);
@@ -290,30 +381,56 @@ public class SoftKeyboard extends InputMethodService
         }
     }
 
-    public void onText(CharSequence text) {
-    }
-
     private void handleBackspace() {
+        keystrokeStart = System.nanoTime();
         keyDownUp(KeyEvent.KEYCODE_DEL);
         updateShiftKeyState(getCurrentInputEditorInfo());
 
         if (compositionText.length() >= 1) {
             compositionText.deleteCharAt(compositionText.length() - 1);
         }
+        gestureComposing = false;
         updateCandidateViewAndComposingText();
     }
 
     private void updateCandidateViewAndComposingText() {
-        List<String> candidateList = getCandidates();
-        List<String> candidates = candidateList.subList(0, Math.min(candidateList.size(), 20));
-        updateCandidatesList(getCandidatesWithoutDuplicates(candidates));
+        candidateQueryScheduler.submit(lowerCaseComposition(), inputMode);
 
+        long start = System.nanoTime();
         getCurrentInputConnection().setComposingText(compositionText, compositionText.length());
+        Metrics.SET_COMPOSING_TEXT.record(System.nanoTime() - start);
     }
 
-    private ArrayList<String> getCandidatesWithoutDuplicates(List<String> candidates) {
-        Set<String> setWithoutDuplicates = new LinkedHashSet<>(candidates);
-        return new ArrayList<>(setWithoutDuplicates);
+    /**
+     * The query text for the composition: lower case, as the dictionaries hold it.
+     */
+    private String lowerCaseComposition() {
+        if (compositionText.length() == 0) {
+            return "";
+        }
+        queryText.setLength(0);
+        for (int i = 0; i < compositionText.length(); i++) {
+            queryText.append(Character.toLowerCase(compositionText.charAt(i)));
+        }
+        return queryText.toString();
+    }
+
+    // Runs on the candidate query worker.
+    private List<String> queryCandidates(String prefix, InputMode mode, boolean predict) {
+        if (predict) {
+            return candidateGenerator.predictions(prefix, dictionaryManager.get());
+        }
+        long start = System.nanoTime();
+        Dictionaries dictionaries = dictionaryManager.get();
+        dictionaryManager.recordQuery(dictionaries);
+        List<String> candidates = candidateGenerator.query(prefix, mode, dictionaries, keyProximity);
+        if (candidateGenerator.lastQueryCached()) {
+            Metrics.CANDIDATE_CACHE_HITS.incrementAndGet();
+        } else {
+            Metrics.CANDIDATE_CACHE_MISSES.incrementAndGet();
+        }
+        Metrics.query(mode).record(System.nanoTime() - start);
+        return candidates;
     }
 
     private void handleShift() {
@@ -338,14 +455,21 @@ public class SoftKeyboard extends InputMethodService
     }
 
     private void handleCharacter(int primaryCode) {
+        long start = System.nanoTime();
         if (isInputViewShown()) {
             if (mInputView.isShifted()) {
                 primaryCode = Character.toUpperCase(primaryCode);
             }
         }
         char ch = (char) primaryCode;
+        if (gestureComposing && Character.isLetter(ch)) {
+            // Typing after a swipe starts the next word
+            compositionText.append(' ');
+            commitInput();
+        }
         compositionText.append(ch);
         if (Character.isLetter(ch)) {
+            keystrokeStart = start;
             updateCandidateViewAndComposingText();
         } else { // If char not in [a~z] or [A~Z], commit whole composition text.
             commitInput();
@@ -353,44 +477,95 @@ public class SoftKeyboard extends InputMethodService
         updateShiftKeyState(getCurrentInputEditorInfo());
     }
 
-    private List<String> getCandidates() {
-        if (compositionText.length() == 0) {
-            return new ArrayList<>();
-        }
-        String prefix = compositionText.toString().toLowerCase();
-        if (inputMode == InputMode.English) {
-            Map<String, Long> prefixMap = trie.prefixMap(prefix);
-            List<Map.Entry<String, Long>> matchingWords = new ArrayList<>(prefixMap.entrySet());
-            matchingWords.sort(Map.Entry.comparingByValue(Collections.reverseOrder())); // Sort by frequency, highest first
-
-            List<String> sortedWords = new ArrayList<>();
-            sortedWords.add(prefix);
-            if (!matchingWords.isEmpty()) {
-                for (Map.Entry<String, Long> entry : matchingWords) {
-                    sortedWords.add(entry.getKey());
-                }
-            } else {
-                if (pinyinMap.containsKey(prefix)) {
-                    sortedWords.addAll(pinyinMap.get(prefix));
-                }
+    // Runs on the gesture worker.
+    private List<String> decodeGesture(float[] x, float[] y, int count) {
+        EnglishDict english = dictionaryManager.get().english;
+        GestureDecoder decoder = gestureDecoder;
+        if (english == null || decoder == null) {
+            return Collections.emptyList();
+        }
+        long start = System.nanoTime();
+        List<String> words = decoder.decode(english, x, y, count, MAX_GESTURE_CANDIDATES);
+        Metrics.GESTURE_DECODE.record(System.nanoTime() - start);
+        return words;
+    }
+
+    /**
+     * Composes the best word for a swipe and offers the rest as candidates. A word
+     * already composed is committed first, followed by a space when it was swiped too.
+     */
+    private void onGesture(List<String> words) {
+        if (words.isEmpty() || getCurrentInputConnection() == null) {
+            return;
+        }
+        if (compositionText.length() > 0) {
+            if (gestureComposing) {
+                compositionText.append(' ');
             }
-            return sortedWords;
-        } else {
-            return PinyinDict.getCandidates(prefix);
+            commitInput();
         }
+        String word = words.get(0);
+        if (mInputView.isShifted()) {
+            word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+        }
+        compositionText.append(word);
+        gestureComposing = true;
+        getCurrentInputConnection().setComposingText(compositionText, compositionText.length());
+        updateCandidatesList(words);
+        updateShiftKeyState(getCurrentInputEditorInfo());
     }
 
     public void reset() {
-        compositionText = new StringBuilder();
-        candidates = new ArrayList<>();
+        compositionText.setLength(0);
+        gestureComposing = false;
         updateCandidateViewAndComposingText();
+        showPredictions();
+    }
+
+    /**
+     * Fills the empty candidate strip with words likely to follow the last commit, once
+     * the query worker has them.
+     */
+    private void showPredictions() {
+        if (previousWord != null) {
+            candidateQueryScheduler.submitPredictions(previousWord, inputMode);
+        }
     }
 
     private void commitInput() {
         getCurrentInputConnection().commitText(compositionText.toString(), compositionText.length());
+        if (inputMode != InputMode.Pinyin) {
+            // The composition ends with the character that triggered the commit, if any.
+            int end = compositionText.length();
+            while (end > 0 && !Character.isLetter(compositionText.charAt(end - 1))) {
+                end--;
+            }
+            learn(compositionText.substring(0, end));
+        } else {
+            previousWord = null; // Raw pinyin letters are not a word to predict from
+        }
         reset();
     }
 
+    /**
+     * Remembers that {@code word} was committed for the current composition text, unless
+     * the field does not allow learning.
+     */
+    void learn(String word) {
+        if (!learning) {
+            previousWord = null;
+            return;
+        }
+        InputMode mode = UserDict.learnedMode(inputMode, word);
+        String reading = mode == InputMode.English ? word.toLowerCase() : lowerCaseComposition();
+        userDict.record(mode, reading, word);
+        if (previousWord != null) {
+            userDict.recordFollower(previousWord, word);
+        }
+        // A commit without letters, such as punctuation alone, ends the sentence
+        previousWord = word.isEmpty() ? null : word;
+    }
+
     private IBinder getToken() {
         final Dialog dialog = getWindow();
         if (dialog == null) {
@@ -405,25 +580,28 @@ public class SoftKeyboard extends InputMethodService
 
 
     private void handleLanguageSwitch() {
+        previousWord = null;
         reset();
-        inputMode = inputMode == InputMode.English ? InputMode.Pinyin : InputMode.English;
+        // English, then pinyin, then both at once
+        inputMode = InputMode.values()[(inputMode.ordinal() + 1) % InputMode.values().length];
         updateStatusOfSwitchKey();
+        updateGestureInput();
     }
 
     private void updateStatusOfSwitchKey() {
-        List<Keyboard.Key> keys = mQwertyKeyboard.getKeys();
-        Keyboard.Key switchKey = keys.stream()
-                .filter(key -> key.codes != null && key.codes.length > 0 && key.codes[0] == LatinKeyboard.KEYCODE_LANGUAGE_SWITCH)
-                .findFirst()
-                .get();
-
+        String label;
         if (inputMode == InputMode.Pinyin) {
-            switchKey.label = "\uD83C\uDF10中文";
+            label = "\uD83C\uDF10中文";
+        } else if (inputMode == InputMode.Mixed) {
+            label = "\uD83C\uDF10中/En";
         } else {
-            switchKey.label = "\uD83C\uDF10En";
+            label = "\uD83C\uDF10En";
+        }
+        Keyboard.Key switchKey = mQwertyKeyboard.setLanguageSwitchLabel(label);
+        // Redraw the one key; the letters keyboard is drawn whole whenever it is shown again
+        if (mInputView.getKeyboard() == mQwertyKeyboard) {
+            mInputView.invalidateKey(switchKey);
         }
-        // Redraw the keyboard with updated labels
-        mInputView.invalidateAllKeys();
     }
 
     private void checkToggleCapsLock() {
@@ -435,22 +613,4 @@ public class SoftKeyboard extends InputMethodService
             mLastShiftTime = now;
         }
     }
-
-    public void swipeRight() {
-    }
-
-    public void swipeLeft() {
-    }
-
-    public void swipeDown() {
-    }
-
-    public void swipeUp() {
-    }
-
-    public void onPress(int primaryCode) {
-    }
-
-    public void onRelease(int primaryCode) {
-    }
 }
@@ -0,0 +1,158 @@
+package rkr.tinykeyboard.dict;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiles the next-word table read by BigramDict. There is no bigram corpus in dict/,
+ * so the pairs come from the pinyin dictionary: a phrase such as 中国人 that splits
+ * into two dictionary words 中国 + 人 says that 人 may follow 中国, as often as the
+ * phrase itself is used. English pairs would need an English bigram corpus, which dict/
+ * does not have yet; English predictions come from the user's own commits until it does.
+ *
+ * <pre>
+ * int    magic ('HLBG'), version, word count, entry count, word pool size, backoff penalty
+ * int    word offsets[wordCount + 1]   (into the word pool)
+ * int    follower starts[wordCount + 1] (into entries)
+ * int    entries[entryCount]           (follower word << 8 | quantized score, best first)
+ * byte   word pool                     (UTF-8 words, sorted by their bytes)
+ * </pre>
+ *
+ * Scores are log frequencies scaled to 0..255 over the whole table. The backoff penalty is
+ * what a score loses, in the same units, for each character of context dropped when
+ * BigramDict backs off to an ending of an unknown phrase.
+ */
+public class BigramDictCompiler {
+    public static final int MAGIC = 0x484c4247; // "HLBG"
+    public static final int VERSION = 2;
+    public static final int MAX_FOLLOWERS = 16;
+    // Stupid backoff (Brants et al., 2007): a shorter context's frequency counts this much
+    private static final double BACKOFF = 0.4;
+
+    public static void compile(File pinyinTxt, File output) throws IOException {
+        Map<String, Double> frequencies = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(pinyinTxt), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.contains(" 0 ")) { // ' 0 ' means simplified Chinese characters
+                    continue;
+                }
+                // 西红柿 760.851466162 0 xi hong shi
+                String[] wordFrequency = line.split(" 0 ")[0].split(" ");
+                double frequency = Double.parseDouble(wordFrequency[1]);
+                if (frequency > 0) {
+                    frequencies.merge(wordFrequency[0], frequency, Math::max);
+                }
+            }
+        }
+
+        Map<String, Map<String, Double>> pairs = new HashMap<>();
+        for (Map.Entry<String, Double> phrase : frequencies.entrySet()) {
+            String text = phrase.getKey();
+            for (int split = 1; split < text.length(); split++) {
+                String first = text.substring(0, split);
+                String second = text.substring(split);
+                if (frequencies.containsKey(first) && frequencies.containsKey(second)) {
+                    pairs.computeIfAbsent(first, k -> new HashMap<>()).merge(second, phrase.getValue(), Math::max);
+                }
+            }
+        }
+
+        // Every word that is a key or a follower, sorted by UTF-8 bytes
+        TreeMap<byte[], String> sorted = new TreeMap<>(BigramDictCompiler::compareBytes);
+        double minLog = Double.MAX_VALUE;
+        double maxLog = -Double.MAX_VALUE;
+        for (Map.Entry<String, Map<String, Double>> entry : pairs.entrySet()) {
+            sorted.put(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getKey());
+            for (Map.Entry<String, Double> follower : entry.getValue().entrySet()) {
+                sorted.put(follower.getKey().getBytes(StandardCharsets.UTF_8), follower.getKey());
+                double log = Math.log(follower.getValue());
+                minLog = Math.min(minLog, log);
+                maxLog = Math.max(maxLog, log);
+            }
+        }
+        Map<String, Integer> wordIndex = new HashMap<>();
+        for (String word : sorted.values()) {
+            wordIndex.put(word, wordIndex.size());
+        }
+
+        int wordCount = sorted.size();
+        int[] wordOffsets = new int[wordCount + 1];
+        int[] followerStarts = new int[wordCount + 1];
+        List<Integer> entries = new ArrayList<>();
+        ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        int w = 0;
+        for (Map.Entry<byte[], String> word : sorted.entrySet()) {
+            wordOffsets[w] = pool.size();
+            pool.write(word.getKey());
+            followerStarts[w] = entries.size();
+            Map<String, Double> followers = pairs.get(word.getValue());
+            if (followers != null) {
+                List<Map.Entry<String, Double>> best = new ArrayList<>(followers.entrySet());
+                best.sort(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()));
+                for (Map.Entry<String, Double> follower : best.subList(0, Math.min(MAX_FOLLOWERS, best.size()))) {
+                    entries.add(wordIndex.get(follower.getKey()) << 8 | quantize(Math.log(follower.getValue()), minLog, maxLog));
+                }
+            }
+            w++;
+        }
+        wordOffsets[wordCount] = pool.size();
+        followerStarts[wordCount] = entries.size();
+
+        output.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(wordCount);
+            out.writeInt(entries.size());
+            out.writeInt(pool.size());
+            out.writeInt(backoffPenalty(minLog, maxLog));
+            for (int offset : wordOffsets) {
+                out.writeInt(offset);
+            }
+            for (int start : followerStarts) {
+                out.writeInt(start);
+            }
+            for (int entry : entries) {
+                out.writeInt(entry);
+            }
+            pool.writeTo(out);
+        }
+    }
+
+    private static int quantize(double log, double minLog, double maxLog) {
+        return maxLog == minLog ? 255 : (int) Math.round(255 * (log - minLog) / (maxLog - minLog));
+    }
+
+    /**
+     * {@link #BACKOFF} as a difference of quantized scores.
+     */
+    private static int backoffPenalty(double minLog, double maxLog) {
+        return maxLog == minLog ? 0 : (int) Math.round(255 * -Math.log(BACKOFF) / (maxLog - minLog));
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        int common = Math.min(a.length, b.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (a[i] & 0xff) - (b[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return a.length - b.length;
+    }
+}
@@ -0,0 +1,185 @@
+package rkr.tinykeyboard.dict;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles a CC-CEDICT file (cedict_ts.u8, https://www.mdbg.net/chinese/dictionary?page=cedict)
+ * into the pinyin to English index read by PinyinEnglishDict:
+ *
+ * <pre>
+ * int    magic ('HLCE'), version, key count, gloss count, key pool size, gloss pool size
+ * int    key offsets[keyCount + 1]      (into the key pool)
+ * int    gloss starts[keyCount + 1]     (into gloss offsets)
+ * int    gloss offsets[glossCount + 1]  (into the gloss pool)
+ * byte   key pool                       (ASCII pinyin without tones or spaces, sorted)
+ * byte   gloss pool                     (UTF-8 English glosses)
+ * </pre>
+ *
+ * Only glosses that can stand as an English word for the reading are kept: references to
+ * other entries, such as "variant of", "see" and "surname" glosses and classifiers, are
+ * dropped, and parenthesized notes and bracketed pinyin are cut from the rest.
+ *
+ * <p>CC-CEDICT is not checked in; the downloadCedict task of the app fetches it into
+ * app/dict, and the app build skips this compiler while it is missing.
+ */
+public class CedictCompiler {
+    public static final int MAGIC = 0x484c4345; // "HLCE"
+    public static final int VERSION = 1;
+    public static final int MAX_GLOSSES = 10;
+    // Glosses that point at another entry rather than translate this one
+    private static final String[] REFERENCE_PREFIXES = {
+            "see ", "surname ", "abbr. for ", "abbr. of ", "also written ", "also pr. ", "CL:", "used in ", "same as ", "Taiwan pr. "};
+    private static final Pattern PARENTHESIZED = Pattern.compile("\\s*\\([^()]*\\)");
+    private static final Pattern BRACKETED = Pattern.compile("\\s*\\[[^\\[\\]]*\\]");
+
+    /**
+     * Returns the number of pinyin keys written. Fails when {@code cedict} is missing or
+     * holds no entries, so a build never ships an empty index.
+     */
+    public static int compile(File cedict, File output) throws IOException {
+        if (!cedict.isFile()) {
+            throw new FileNotFoundException(cedict + " is missing; run ./gradlew :app:downloadCedict or download cedict_ts.u8 from https://www.mdbg.net/chinese/dictionary?page=cedict into " + cedict.getParent());
+        }
+        TreeMap<String, Set<String>> glosses = new TreeMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(cedict), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // 中國 中国 [Zhong1 guo2] /China/Middle Kingdom/
+                int open = line.indexOf('[');
+                int close = line.indexOf(']', open + 1);
+                if (line.startsWith("#") || open < 0 || close < 0) {
+                    continue;
+                }
+                String key = toKey(line.substring(open + 1, close));
+                if (key == null) {
+                    continue;
+                }
+                Set<String> english = glosses.computeIfAbsent(key, k -> new LinkedHashSet<>());
+                for (String gloss : line.substring(close + 1).split("/")) {
+                    gloss = clean(gloss);
+                    if (gloss != null && english.size() < MAX_GLOSSES) {
+                        english.add(gloss);
+                    }
+                }
+                if (english.isEmpty()) {
+                    glosses.remove(key);
+                }
+            }
+        }
+        if (glosses.isEmpty()) {
+            throw new IOException("No CC-CEDICT entries in " + cedict);
+        }
+
+        int keyCount = glosses.size();
+        int[] keyOffsets = new int[keyCount + 1];
+        int[] glossStarts = new int[keyCount + 1];
+        List<Integer> glossOffsets = new ArrayList<>();
+        ByteArrayOutputStream keyPool = new ByteArrayOutputStream();
+        ByteArrayOutputStream glossPool = new ByteArrayOutputStream();
+        int i = 0;
+        for (Map.Entry<String, Set<String>> entry : glosses.entrySet()) {
+            keyOffsets[i] = keyPool.size();
+            keyPool.write(entry.getKey().getBytes(StandardCharsets.US_ASCII));
+            glossStarts[i] = glossOffsets.size();
+            for (String gloss : entry.getValue()) {
+                glossOffsets.add(glossPool.size());
+                glossPool.write(gloss.getBytes(StandardCharsets.UTF_8));
+            }
+            i++;
+        }
+        keyOffsets[keyCount] = keyPool.size();
+        glossStarts[keyCount] = glossOffsets.size();
+        glossOffsets.add(glossPool.size());
+
+        output.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(keyCount);
+            out.writeInt(glossOffsets.size() - 1);
+            out.writeInt(keyPool.size());
+            out.writeInt(glossPool.size());
+            for (int offset : keyOffsets) {
+                out.writeInt(offset);
+            }
+            for (int start : glossStarts) {
+                out.writeInt(start);
+            }
+            for (int offset : glossOffsets) {
+                out.writeInt(offset);
+            }
+            keyPool.writeTo(out);
+            glossPool.writeTo(out);
+        }
+        return keyCount;
+    }
+
+    /**
+     * A gloss as an English candidate: "to eat (a meal)" becomes "to eat". Returns null
+     * for references to other entries and for glosses left empty or still holding Chinese.
+     */
+    static String clean(String gloss) {
+        gloss = gloss.trim();
+        if (gloss.contains("variant of ")) {
+            return null;
+        }
+        for (String prefix : REFERENCE_PREFIXES) {
+            if (gloss.startsWith(prefix)) {
+                return null;
+            }
+        }
+        String previous;
+        do {
+            previous = gloss;
+            gloss = PARENTHESIZED.matcher(gloss).replaceAll("");
+        } while (!gloss.equals(previous));
+        gloss = BRACKETED.matcher(gloss).replaceAll("");
+        gloss = gloss.replaceAll("\\s+([,;.])", "$1").replaceAll("\\s+", " ").replaceAll("^[\\s,;]+|[\\s,;]+$", "");
+        for (int i = 0; i < gloss.length(); i++) {
+            char ch = gloss.charAt(i);
+            if (ch == '|' || ch >= 0x2e80) {
+                return null;
+            }
+        }
+        return gloss.isEmpty() ? null : gloss;
+    }
+
+    /**
+     * "Zhong1 guo2" to "zhongguo", spelling ü as v like the pinyin dictionary does.
+     * Returns null for readings that are not plain pinyin, such as letters or digits.
+     */
+    static String toKey(String reading) {
+        StringBuilder key = new StringBuilder();
+        for (String syllable : reading.toLowerCase().replace("u:", "v").split(" ")) {
+            int end = syllable.length();
+            if (end > 0 && syllable.charAt(end - 1) >= '1' && syllable.charAt(end - 1) <= '5') {
+                end--;
+            }
+            for (int c = 0; c < end; c++) {
+                char ch = syllable.charAt(c);
+                if (ch < 'a' || ch > 'z') {
+                    return null;
+                }
+                key.append(ch);
+            }
+        }
+        return key.length() == 0 ? null : key.toString();
+    }
+}
@@ -0,0 +1,150 @@
+package rkr.tinykeyboard.dict;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiles google_227800_words.json into the binary layout read by EnglishDict:
+ *
+ * <pre>
+ * int    magic ('HLEN'), version, word count, key pool size
+ * double sum of all frequencies  (to compare them with another dictionary's)
+ * int    first-byte index[257]   (first word whose key starts with byte >= b)
+ * int    key offsets[count + 1]  (into the key pool)
+ * int    ranks[count]            (0 for the most frequent word; ties in key order)
+ * byte   frequencies[count * 5]  (by rank; unsigned 40-bit, big endian)
+ * int    top-K tree[2 * count]   (see RangeMaxTree; best rank first)
+ * byte   key pool                (ASCII keys, sorted)
+ * </pre>
+ *
+ * Ranking only ever compares ranks, so the frequencies themselves are only read to
+ * report a word's count.
+ */
+public class EnglishDictCompiler {
+    public static final int MAGIC = 0x484c454e; // "HLEN"
+    public static final int VERSION = 4;
+    public static final int FREQUENCY_BYTES = 5;
+
+    public static void compile(File json, File output) throws IOException {
+        TreeMap<String, Long> words = read(json);
+        int count = words.size();
+        long[] frequencyValues = new long[count];
+        int[] offsets = new int[count + 1];
+        int[] firstByteIndex = new int[257];
+        ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+        int i = 0;
+        int nextByte = 0;
+        for (Map.Entry<String, Long> entry : words.entrySet()) {
+            if (!StandardCharsets.US_ASCII.newEncoder().canEncode(entry.getKey())) {
+                throw new IOException("Non-ASCII key: " + entry.getKey());
+            }
+            byte[] key = entry.getKey().getBytes(StandardCharsets.US_ASCII);
+            int first = key.length == 0 ? 0 : key[0] & 0xff;
+            while (nextByte <= first) {
+                firstByteIndex[nextByte++] = i;
+            }
+            offsets[i] = pool.size();
+            pool.write(key);
+
+            long frequency = entry.getValue();
+            if (frequency < 0 || frequency >= 1L << (8 * FREQUENCY_BYTES)) {
+                throw new IOException("Frequency out of range for " + entry.getKey() + ": " + frequency);
+            }
+            frequencyValues[i] = frequency;
+            i++;
+        }
+        while (nextByte <= 256) {
+            firstByteIndex[nextByte++] = count;
+        }
+        offsets[count] = pool.size();
+
+        Integer[] byRank = new Integer[count];
+        for (int word = 0; word < count; word++) {
+            byRank[word] = word;
+        }
+        Arrays.sort(byRank, (a, b) -> frequencyValues[a] != frequencyValues[b] ? Long.compare(frequencyValues[b], frequencyValues[a]) : Integer.compare(a, b));
+        int[] ranks = new int[count];
+        ByteArrayOutputStream frequencies = new ByteArrayOutputStream();
+        double totalFrequency = 0;
+        for (int rank = 0; rank < count; rank++) {
+            ranks[byRank[rank]] = rank;
+            long frequency = frequencyValues[byRank[rank]];
+            totalFrequency += frequency;
+            for (int shift = 8 * (FREQUENCY_BYTES - 1); shift >= 0; shift -= 8) {
+                frequencies.write((int) (frequency >>> shift));
+            }
+        }
+        int[] tree = RangeMaxTree.build(count, (a, b) -> Integer.compare(ranks[a], ranks[b]), leaf -> true);
+
+        output.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeInt(pool.size());
+            out.writeDouble(totalFrequency);
+            for (int index : firstByteIndex) {
+                out.writeInt(index);
+            }
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            for (int rank : ranks) {
+                out.writeInt(rank);
+            }
+            frequencies.writeTo(out);
+            for (int node : tree) {
+                out.writeInt(node);
+            }
+            pool.writeTo(out);
+        }
+    }
+
+    /**
+     * The {@code limit} most frequent words starting with each of {@code prefixes}, in the
+     * order EnglishDict returns them: falling frequency, ties in key order.
+     */
+    public static Map<String, List<String>> topWordsByPrefix(File json, List<String> prefixes, int limit) throws IOException {
+        TreeMap<String, Long> words = read(json);
+        Map<String, List<String>> top = new HashMap<>();
+        for (String prefix : prefixes) {
+            List<Map.Entry<String, Long>> matches = new ArrayList<>(words.subMap(prefix, prefix + Character.MAX_VALUE).entrySet());
+            // Stable, so equal frequencies keep their key order
+            matches.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+            List<String> list = new ArrayList<>();
+            for (int i = 0; i < Math.min(limit, matches.size()); i++) {
+                list.add(matches.get(i).getKey());
+            }
+            top.put(prefix, list);
+        }
+        return top;
+    }
+
+    private static TreeMap<String, Long> read(File json) throws IOException {
+        TreeMap<String, Long> words = new TreeMap<>();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(json), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                words.put(reader.nextName(), reader.nextLong());
+            }
+            reader.endObject();
+        }
+        return words;
+    }
+}
@@ -0,0 +1,244 @@
+package rkr.tinykeyboard.dict;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Compiles google_pinyin_rawdict_utf8_65105_freq.txt into the flat layout that
+ * PinyinDict maps from disk:
+ *
+ * <pre>
+ * int    magic ('HLPY'), version, key count, word count, run length,
+ *        key pool size, word pool size
+ * double sum of all word frequencies  (to compare them with another dictionary's)
+ * int    key offsets[keyCount + 1]    (into the key pool)
+ * int    run starts[keyCount + 1]     (into runs; high bit set for full pinyin keys)
+ * int    runs[runLength]              (word indices; per key distinct words, most frequent first)
+ * int    word offsets[wordCount + 1]  (into the word pool)
+ * double word frequencies[wordCount]
+ * int    top-K tree over runs[2 * runLength] (full pinyin readings only, see RangeMaxTree)
+ * byte   key pool                     (ASCII pinyin keys, sorted)
+ * byte   word pool                    (UTF-8 words)
+ * </pre>
+ *
+ * A key is either a full pinyin ("xihongshi") or an abbreviation ("xhs"); a string
+ * that is both gets one run holding both sets of words, as the in-memory map did.
+ * Each run is sorted and deduplicated here, so the words of one key are read in order
+ * with no ranking at query time. The top-K tree only holds the words a key spells in
+ * full, so "ce" gives 策 but not 从而 ("c e"): prefix queries merge the runs of many keys
+ * through it, and the phrase decoder takes its syllable edges from it.
+ */
+public class PinyinDictCompiler {
+    public static final int MAGIC = 0x484c5059; // "HLPY"
+    public static final int VERSION = 5;
+    public static final int FULL_PINYIN_FLAG = 0x80000000;
+
+    public static void compile(File txt, File output) throws IOException {
+        Source source = read(txt);
+        TreeMap<String, List<Integer>> runs = source.runs;
+        TreeMap<String, Set<String>> fullPinyinWords = source.fullPinyinWords;
+        List<String> words = source.words;
+        List<Double> frequencies = source.frequencies;
+
+        int keyCount = runs.size();
+        int[] keyOffsets = new int[keyCount + 1];
+        int[] runStarts = new int[keyCount + 1];
+        List<Integer> runList = new ArrayList<>();
+        ByteArrayOutputStream keyPool = new ByteArrayOutputStream();
+        List<Boolean> fullReadings = new ArrayList<>();
+        int i = 0;
+        for (Map.Entry<String, List<Integer>> entry : runs.entrySet()) {
+            keyOffsets[i] = keyPool.size();
+            keyPool.write(entry.getKey().getBytes(StandardCharsets.US_ASCII));
+            Set<String> full = fullPinyinWords.get(entry.getKey());
+            runStarts[i] = runList.size() | (full != null ? FULL_PINYIN_FLAG : 0);
+            for (int word : entry.getValue()) {
+                runList.add(word);
+                fullReadings.add(full != null && full.contains(words.get(word)));
+            }
+            i++;
+        }
+        keyOffsets[keyCount] = keyPool.size();
+        runStarts[keyCount] = runList.size();
+
+        int runLength = runList.size();
+        RangeMaxTree.Ranking byFrequency = (a, b) -> {
+            int result = Double.compare(frequencies.get(runList.get(b)), frequencies.get(runList.get(a)));
+            return result != 0 ? result : Integer.compare(a, b);
+        };
+        int[] tree = RangeMaxTree.build(runLength, byFrequency, fullReadings::get);
+
+        int wordCount = words.size();
+        int[] wordOffsets = new int[wordCount + 1];
+        ByteArrayOutputStream wordPool = new ByteArrayOutputStream();
+        for (int w = 0; w < wordCount; w++) {
+            wordOffsets[w] = wordPool.size();
+            wordPool.write(words.get(w).getBytes(StandardCharsets.UTF_8));
+        }
+        wordOffsets[wordCount] = wordPool.size();
+
+        output.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(keyCount);
+            out.writeInt(wordCount);
+            out.writeInt(runList.size());
+            out.writeInt(keyPool.size());
+            out.writeInt(wordPool.size());
+            double totalFrequency = 0;
+            for (double frequency : frequencies) {
+                totalFrequency += frequency;
+            }
+            out.writeDouble(totalFrequency);
+            for (int offset : keyOffsets) {
+                out.writeInt(offset);
+            }
+            for (int start : runStarts) {
+                out.writeInt(start);
+            }
+            for (int wordIndex : runList) {
+                out.writeInt(wordIndex);
+            }
+            for (int offset : wordOffsets) {
+                out.writeInt(offset);
+            }
+            for (double frequency : frequencies) {
+                out.writeDouble(frequency);
+            }
+            for (int node : tree) {
+                out.writeInt(node);
+            }
+            keyPool.writeTo(out);
+            wordPool.writeTo(out);
+        }
+    }
+
+    /**
+     * The first {@code limit} words PinyinDict offers for each of {@code prefixes}: the
+     * run of the key when the prefix is a key, else the full pinyin words of every key
+     * starting with it merged by falling frequency, ties in run order, repeats dropped.
+     */
+    public static Map<String, List<String>> topWordsByPrefix(File txt, List<String> prefixes, int limit) throws IOException {
+        Source source = read(txt);
+        Map<String, List<String>> top = new HashMap<>();
+        for (String prefix : prefixes) {
+            List<Integer> merged = new ArrayList<>();
+            List<Integer> run = source.runs.get(prefix);
+            if (run != null) {
+                merged.addAll(run);
+            } else {
+                for (Map.Entry<String, List<Integer>> entry : source.runs.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+                    Set<String> full = source.fullPinyinWords.get(entry.getKey());
+                    for (int word : entry.getValue()) {
+                        if (full != null && full.contains(source.words.get(word))) {
+                            merged.add(word);
+                        }
+                    }
+                }
+                // Stable, so equal frequencies keep their run order
+                merged.sort((a, b) -> Double.compare(source.frequencies.get(b), source.frequencies.get(a)));
+            }
+            List<String> list = new ArrayList<>();
+            for (int i = 0; i < merged.size() && list.size() < limit; i++) {
+                String word = source.words.get(merged.get(i));
+                if (!list.contains(word)) {
+                    list.add(word);
+                }
+            }
+            top.put(prefix, list);
+        }
+        return top;
+    }
+
+    /**
+     * The parsed source: each key's run, sorted and distinct, and for the keys that are a
+     * full pinyin the words they spell in full.
+     */
+    private static final class Source {
+        final TreeMap<String, List<Integer>> runs = new TreeMap<>();
+        final TreeMap<String, Set<String>> fullPinyinWords = new TreeMap<>();
+        final List<String> words = new ArrayList<>();
+        final List<Double> frequencies = new ArrayList<>();
+    }
+
+    private static Source read(File txt) throws IOException {
+        Source source = new Source();
+        TreeMap<String, List<Integer>> runs = source.runs;
+        TreeMap<String, Set<String>> fullPinyinWords = source.fullPinyinWords;
+        List<String> words = source.words;
+        List<Double> frequencies = source.frequencies;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(txt), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.contains(" 0 ")) { // ' 0 ' means simplified Chinese characters
+                    continue;
+                }
+                String[] arr = line.split(" 0 ");
+                // 董 2494.97706011 0 dong
+                // 西红柿 760.851466162 0 xi hong shi
+                if (arr.length != 2) {
+                    continue;
+                }
+                StringBuilder abbr = new StringBuilder();
+                for (String syllable : arr[1].split(" ")) {
+                    abbr.append(syllable.charAt(0));
+                }
+                String pinyin = arr[1].replace(" ", "");
+                if (!StandardCharsets.US_ASCII.newEncoder().canEncode(pinyin)) {
+                    throw new IOException("Non-ASCII pinyin: " + line);
+                }
+                String[] wordFrequency = arr[0].split(" ");
+
+                int wordIndex = words.size();
+                words.add(wordFrequency[0]);
+                frequencies.add(Double.parseDouble(wordFrequency[1]));
+
+                runs.computeIfAbsent(pinyin, k -> new ArrayList<>()).add(wordIndex);
+                fullPinyinWords.computeIfAbsent(pinyin, k -> new HashSet<>()).add(wordFrequency[0]);
+                if (abbr.length() >= 1) {
+                    runs.computeIfAbsent(abbr.toString(), k -> new ArrayList<>()).add(wordIndex);
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<Integer>> entry : runs.entrySet()) {
+            entry.setValue(sortedDistinct(entry.getValue(), words, frequencies));
+        }
+        return source;
+    }
+
+    /**
+     * The words of a run by falling frequency, ties in dictionary order, keeping only the
+     * most frequent entry of a word listed more than once (了 is both "le" and "liao", so
+     * twice under "l").
+     */
+    private static List<Integer> sortedDistinct(List<Integer> run, List<String> words, List<Double> frequencies) {
+        List<Integer> sorted = new ArrayList<>(run);
+        sorted.sort((a, b) -> Double.compare(frequencies.get(b), frequencies.get(a)));
+        Set<String> seen = new HashSet<>();
+        List<Integer> distinct = new ArrayList<>();
+        for (int word : sorted) {
+            if (seen.add(words.get(word))) {
+                distinct.add(word);
+            }
+        }
+        return distinct;
+    }
+}
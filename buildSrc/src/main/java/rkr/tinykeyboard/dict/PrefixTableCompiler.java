@@ -0,0 +1,100 @@
+package rkr.tinykeyboard.dict;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputes the candidates of every one and two letter prefix, a to z, for English and
+ * for pinyin, in the layout PrefixTable maps from disk:
+ *
+ * <pre>
+ * int    magic ('HLPT'), version, words per prefix, English section start, pinyin section start
+ * then per section:
+ * int    word count
+ * int    slot starts[SLOT_COUNT + 1]  (into the words; slot order as in {@link #prefixes()})
+ * int    word offsets[wordCount + 1]  (into the word pool)
+ * byte   word pool                    (UTF-8 words)
+ * </pre>
+ *
+ * These prefixes are the ones typed most, and the widest: their answers walk the most
+ * keys and touch the most pages, so from the first keystroke they are a table lookup.
+ */
+public class PrefixTableCompiler {
+    public static final int MAGIC = 0x484c5054; // "HLPT"
+    public static final int VERSION = 1;
+    public static final int SLOT_COUNT = 26 + 26 * 26;
+    private static final int HEADER_SIZE = 5 * 4;
+
+    public static void compile(File englishJson, File pinyinTxt, File output, int wordsPerPrefix) throws IOException {
+        List<String> prefixes = prefixes();
+        ByteArrayOutputStream english = section(EnglishDictCompiler.topWordsByPrefix(englishJson, prefixes, wordsPerPrefix), prefixes);
+        ByteArrayOutputStream pinyin = section(PinyinDictCompiler.topWordsByPrefix(pinyinTxt, prefixes, wordsPerPrefix), prefixes);
+
+        output.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(wordsPerPrefix);
+            out.writeInt(HEADER_SIZE);
+            out.writeInt(HEADER_SIZE + english.size());
+            english.writeTo(out);
+            pinyin.writeTo(out);
+        }
+    }
+
+    /**
+     * "a" to "z", then "aa" to "zz": slot {@code c} for one letter, {@code 26 + 26 * c1 + c2}
+     * for two.
+     */
+    static List<String> prefixes() {
+        List<String> prefixes = new ArrayList<>(SLOT_COUNT);
+        for (char first = 'a'; first <= 'z'; first++) {
+            prefixes.add(String.valueOf(first));
+        }
+        for (char first = 'a'; first <= 'z'; first++) {
+            for (char second = 'a'; second <= 'z'; second++) {
+                prefixes.add(new String(new char[]{first, second}));
+            }
+        }
+        return prefixes;
+    }
+
+    private static ByteArrayOutputStream section(Map<String, List<String>> top, List<String> prefixes) throws IOException {
+        List<String> words = new ArrayList<>();
+        int[] slotStarts = new int[SLOT_COUNT + 1];
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            slotStarts[slot] = words.size();
+            words.addAll(top.get(prefixes.get(slot)));
+        }
+        slotStarts[SLOT_COUNT] = words.size();
+
+        int[] wordOffsets = new int[words.size() + 1];
+        ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        for (int i = 0; i < words.size(); i++) {
+            wordOffsets[i] = pool.size();
+            pool.write(words.get(i).getBytes(StandardCharsets.UTF_8));
+        }
+        wordOffsets[words.size()] = pool.size();
+
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(section);
+        out.writeInt(words.size());
+        for (int start : slotStarts) {
+            out.writeInt(start);
+        }
+        for (int offset : wordOffsets) {
+            out.writeInt(offset);
+        }
+        pool.writeTo(out);
+        out.flush();
+        return section;
+    }
+}
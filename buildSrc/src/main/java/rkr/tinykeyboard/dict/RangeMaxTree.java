@@ -0,0 +1,36 @@
+package rkr.tinykeyboard.dict;
+
+/**
+ * Builds the argmax segment trees that RangeTopK walks at runtime. The tree has
+ * {@code 2 * n} entries: leaves at {@code [n, 2n)} hold their own index, or -1 when
+ * excluded, and every inner node holds the best leaf of its subtree (entry 0 is unused).
+ */
+class RangeMaxTree {
+    interface Ranking {
+        /** Negative when leaf {@code a} ranks before leaf {@code b}. */
+        int compare(int a, int b);
+    }
+
+    interface Filter {
+        boolean accept(int leaf);
+    }
+
+    static int[] build(int n, Ranking ranking, Filter filter) {
+        int[] tree = new int[2 * n];
+        for (int i = 0; i < n; i++) {
+            tree[n + i] = filter.accept(i) ? i : -1;
+        }
+        for (int node = n - 1; node >= 1; node--) {
+            int left = tree[2 * node];
+            int right = tree[2 * node + 1];
+            if (left == -1) {
+                tree[node] = right;
+            } else if (right == -1) {
+                tree[node] = left;
+            } else {
+                tree[node] = ranking.compare(left, right) <= 0 ? left : right;
+            }
+        }
+        return tree;
+    }
+}
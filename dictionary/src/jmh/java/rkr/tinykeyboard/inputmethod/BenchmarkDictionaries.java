@@ -0,0 +1,99 @@
+package rkr.tinykeyboard.inputmethod;
+
+import rkr.tinykeyboard.dict.BigramDictCompiler;
+import rkr.tinykeyboard.dict.EnglishDictCompiler;
+import rkr.tinykeyboard.dict.PinyinDictCompiler;
+import rkr.tinykeyboard.dict.PrefixTableCompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+
+/**
+ * Source and compiled dictionaries shared by the benchmarks. The sources are read from
+ * the directory in the hallelujah.dictDir system property (app/dict when run through
+ * Gradle) and compiled once per JVM into a temporary directory.
+ */
+final class BenchmarkDictionaries {
+    static final File SOURCE_DIR = new File(System.getProperty("hallelujah.dictDir", "app/dict"));
+    static final File ENGLISH_SOURCE = new File(SOURCE_DIR, "google_227800_words.json");
+    static final File PINYIN_SOURCE = new File(SOURCE_DIR, "google_pinyin_rawdict_utf8_65105_freq.txt");
+
+    private static File compiledDir;
+
+    private BenchmarkDictionaries() {
+    }
+
+    static synchronized File compiledDir() {
+        if (compiledDir == null) {
+            try {
+                File dir = Files.createTempDirectory("hallelujah-dict").toFile();
+                EnglishDictCompiler.compile(ENGLISH_SOURCE, new File(dir, "english_dict.bin"));
+                PinyinDictCompiler.compile(PINYIN_SOURCE, new File(dir, "pinyin_dict.bin"));
+                BigramDictCompiler.compile(PINYIN_SOURCE, new File(dir, "bigram_dict.bin"));
+                PrefixTableCompiler.compile(ENGLISH_SOURCE, PINYIN_SOURCE, new File(dir, "prefix_table.bin"), 20);
+                compiledDir = dir;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return compiledDir;
+    }
+
+    static File english() {
+        return new File(compiledDir(), "english_dict.bin");
+    }
+
+    static File pinyin() {
+        return new File(compiledDir(), "pinyin_dict.bin");
+    }
+
+    static File bigrams() {
+        return new File(compiledDir(), "bigram_dict.bin");
+    }
+
+    static File prefixTable() {
+        return new File(compiledDir(), "prefix_table.bin");
+    }
+
+    /**
+     * The letter rows of res/xml/qwerty.xml, in key units; the second row is inset by half
+     * a key and the third by one and a half, behind shift.
+     */
+    static KeyProximity qwerty() {
+        int[] codes = new int[26];
+        float[] x = new float[26];
+        float[] y = new float[26];
+        getQwertyCentres(codes, x, y);
+        return new KeyProximity(codes, x, y);
+    }
+
+    /**
+     * A swipe decoder for the same layout as {@link #qwerty()}.
+     */
+    static GestureDecoder qwertyGestures() {
+        int[] codes = new int[26];
+        float[] x = new float[26];
+        float[] y = new float[26];
+        getQwertyCentres(codes, x, y);
+        return new GestureDecoder(codes, x, y);
+    }
+
+    /**
+     * Fills in the code and centre of the 26 letter keys.
+     */
+    static void getQwertyCentres(int[] codes, float[] x, float[] y) {
+        String[] rows = {"qwertyuiop", "asdfghjkl", "zxcvbnm"};
+        float[] insets = {0, 0.5f, 1.5f};
+        int key = 0;
+        for (int row = 0; row < rows.length; row++) {
+            for (int column = 0; column < rows[row].length(); column++) {
+                codes[key] = rows[row].charAt(column);
+                x[key] = insets[row] + column + 0.5f;
+                y[key] = row + 0.5f;
+                key++;
+            }
+        }
+    }
+}
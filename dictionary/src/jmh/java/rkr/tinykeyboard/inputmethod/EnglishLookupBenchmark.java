@@ -0,0 +1,77 @@
+package rkr.tinykeyboard.inputmethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * English completion for prefixes of a given length, sampled from the dictionary itself.
+ * Each invocation answers one prefix, cycling through the sample.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnglishLookupBenchmark {
+    private static final int SAMPLE_SIZE = 1024;
+    private static final int LIMIT = 19;
+
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8"})
+    public int prefixLength;
+
+    private EnglishDict dict;
+    private String[] prefixes;
+    private SearchSession session;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        dict = EnglishDict.map(BenchmarkDictionaries.english());
+        Random random = new Random(42);
+        List<String> sample = new ArrayList<>();
+        while (sample.size() < SAMPLE_SIZE) {
+            String word = dict.getWord(random.nextInt(dict.size()));
+            if (word.length() >= prefixLength) {
+                sample.add(word.substring(0, prefixLength));
+            }
+        }
+        prefixes = sample.toArray(new String[0]);
+        session = new SearchSession(dict);
+    }
+
+    @Benchmark
+    public List<String> prefixLookup() {
+        return dict.getWordsWithPrefix(nextPrefix(), LIMIT);
+    }
+
+    /**
+     * The keystroke path: the session is moved to the new prefix, then the range is ranked.
+     */
+    @Benchmark
+    public List<String> sessionLookup() {
+        session.update(nextPrefix());
+        return dict.getWordsInRange(session.start(), session.end(), LIMIT);
+    }
+
+    private String nextPrefix() {
+        String prefix = prefixes[next];
+        next = (next + 1) % prefixes.length;
+        return prefix;
+    }
+}
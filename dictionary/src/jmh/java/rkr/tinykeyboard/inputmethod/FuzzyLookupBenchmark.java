@@ -0,0 +1,65 @@
+package rkr.tinykeyboard.inputmethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typo-tolerant completion for dictionary prefixes with one letter replaced at random,
+ * at lengths allowing one edit (3 to 5) and two (6 and up).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FuzzyLookupBenchmark {
+    private static final int SAMPLE_SIZE = 1024;
+    private static final int LIMIT = 19;
+
+    @Param({"3", "5", "6", "8"})
+    public int prefixLength;
+
+    private FuzzyEnglishSearch search;
+    private String[] prefixes;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        EnglishDict dict = EnglishDict.map(BenchmarkDictionaries.english());
+        search = new FuzzyEnglishSearch(dict, BenchmarkDictionaries.qwerty());
+        Random random = new Random(42);
+        List<String> sample = new ArrayList<>();
+        while (sample.size() < SAMPLE_SIZE) {
+            String word = dict.getWord(random.nextInt(dict.size()));
+            if (word.length() >= prefixLength) {
+                char[] prefix = word.substring(0, prefixLength).toCharArray();
+                prefix[1 + random.nextInt(prefixLength - 1)] = (char) ('a' + random.nextInt(26));
+                sample.add(new String(prefix));
+            }
+        }
+        prefixes = sample.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public List<String> fuzzyLookup() {
+        String prefix = prefixes[next];
+        next = (next + 1) % prefixes.length;
+        return search.getWords(prefix, LIMIT);
+    }
+}
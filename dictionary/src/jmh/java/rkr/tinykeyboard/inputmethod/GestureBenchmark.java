@@ -0,0 +1,109 @@
+package rkr.tinykeyboard.inputmethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding swipes of common words. The paths are synthetic: straight strokes between
+ * key centres, each centre moved by gaussian noise of {@code noise} keys and every point
+ * jittered a little, as a finger that misses keys and does not draw straight lines.
+ * A decode has to fit in a frame, so watch the average and the slow outliers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GestureBenchmark {
+    private static final int SAMPLE_SIZE = 256;
+    // Words of the swipes are drawn from the most frequent ones
+    private static final int MAX_RANK = 20000;
+    private static final int POINTS_PER_STROKE = 8;
+    private static final float JITTER = 0.03f;
+    private static final int LIMIT = 8;
+
+    @Param({"0.1", "0.2", "0.3"})
+    public float noise;
+
+    private EnglishDict english;
+    private GestureDecoder decoder;
+    private float[][] pathX;
+    private float[][] pathY;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        english = EnglishDict.map(BenchmarkDictionaries.english());
+        decoder = BenchmarkDictionaries.qwertyGestures();
+        int[] codes = new int[26];
+        float[] x = new float[26];
+        float[] y = new float[26];
+        BenchmarkDictionaries.getQwertyCentres(codes, x, y);
+        float[] keyX = new float[26];
+        float[] keyY = new float[26];
+        for (int i = 0; i < codes.length; i++) {
+            keyX[codes[i] - 'a'] = x[i];
+            keyY[codes[i] - 'a'] = y[i];
+        }
+
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < english.size(); i++) {
+            String word = english.getWord(i);
+            if (english.getRank(i) < MAX_RANK && word.length() > 1 && word.matches("[a-z]+")) {
+                words.add(word);
+            }
+        }
+        Random random = new Random(42);
+        Collections.shuffle(words, random);
+        pathX = new float[SAMPLE_SIZE][];
+        pathY = new float[SAMPLE_SIZE][];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            String word = words.get(i);
+            int count = 1 + (word.length() - 1) * POINTS_PER_STROKE;
+            pathX[i] = new float[count];
+            pathY[i] = new float[count];
+            float lastX = 0;
+            float lastY = 0;
+            for (int j = 0; j < word.length(); j++) {
+                int letter = word.charAt(j) - 'a';
+                float targetX = keyX[letter] + (float) random.nextGaussian() * noise;
+                float targetY = keyY[letter] + (float) random.nextGaussian() * noise;
+                if (j == 0) {
+                    pathX[i][0] = targetX;
+                    pathY[i][0] = targetY;
+                }
+                for (int step = 1; j > 0 && step <= POINTS_PER_STROKE; step++) {
+                    int point = (j - 1) * POINTS_PER_STROKE + step;
+                    pathX[i][point] = lastX + (targetX - lastX) * step / POINTS_PER_STROKE + (float) random.nextGaussian() * JITTER;
+                    pathY[i][point] = lastY + (targetY - lastY) * step / POINTS_PER_STROKE + (float) random.nextGaussian() * JITTER;
+                }
+                lastX = targetX;
+                lastY = targetY;
+            }
+        }
+    }
+
+    @Benchmark
+    public List<String> decode() {
+        int path = next;
+        next = (next + 1) % SAMPLE_SIZE;
+        return decoder.decode(english, pathX[path], pathY[path], pathX[path].length, LIMIT);
+    }
+}
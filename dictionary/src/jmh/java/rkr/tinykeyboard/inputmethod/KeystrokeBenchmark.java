@@ -0,0 +1,116 @@
+package rkr.tinykeyboard.inputmethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The dictionary part of a keystroke as SoftKeyboard runs it: words are typed one letter
+ * at a time through long-lived sessions, walkers and search buffers. Run with the gc
+ * profiler (the jmh task's default); gc.alloc.rate.norm is the garbage per keystroke,
+ * which should be the result list and the candidate strings only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeystrokeBenchmark {
+    private static final int SAMPLE_SIZE = 1024;
+    private static final int LIMIT = 20;
+
+    private EnglishDict english;
+    private PinyinDict pinyin;
+    private SearchSession englishSession;
+    private SearchSession pinyinSession;
+    private RangeTopK englishTopK;
+    private RangeTopK pinyinTopK;
+    private FuzzyEnglishSearch fuzzySearch;
+    private MixedSearch mixedSearch;
+    private String[] englishPrefixes;
+    private String[] pinyinPrefixes;
+    private int nextEnglish;
+    private int nextPinyin;
+    private int nextMixed;
+
+    @Setup
+    public void setUp() throws IOException {
+        english = EnglishDict.map(BenchmarkDictionaries.english());
+        pinyin = PinyinDict.map(BenchmarkDictionaries.pinyin());
+        englishSession = new SearchSession(english);
+        pinyinSession = new SearchSession(pinyin);
+        englishTopK = english.topKWalker();
+        pinyinTopK = pinyin.prefixWalker();
+        fuzzySearch = new FuzzyEnglishSearch(english, BenchmarkDictionaries.qwerty());
+        mixedSearch = new MixedSearch(english, pinyin);
+
+        Random random = new Random(42);
+        List<String> englishSample = new ArrayList<>();
+        while (englishSample.size() < SAMPLE_SIZE) {
+            addPrefixes(english.getWord(random.nextInt(english.size())), englishSample);
+        }
+        englishPrefixes = englishSample.toArray(new String[0]);
+        String[] syllables = {"ni", "hao", "zhong", "guo", "wo", "men", "shi", "jie", "xue", "sheng"};
+        List<String> pinyinSample = new ArrayList<>();
+        while (pinyinSample.size() < SAMPLE_SIZE) {
+            addPrefixes(syllables[random.nextInt(syllables.length)] + syllables[random.nextInt(syllables.length)], pinyinSample);
+        }
+        pinyinPrefixes = pinyinSample.toArray(new String[0]);
+    }
+
+    /**
+     * Every prefix of {@code word}, as typed.
+     */
+    private static void addPrefixes(String word, List<String> prefixes) {
+        for (int length = 1; length <= word.length(); length++) {
+            prefixes.add(word.substring(0, length));
+        }
+    }
+
+    @Benchmark
+    public List<String> englishKeystroke() {
+        String prefix = englishPrefixes[nextEnglish];
+        nextEnglish = (nextEnglish + 1) % englishPrefixes.length;
+        List<String> words = new ArrayList<>(LIMIT);
+        englishSession.update(prefix);
+        english.addWordsInRange(englishTopK, englishSession.start(), englishSession.end(), LIMIT, words);
+        fuzzySearch.addWords(prefix, LIMIT - words.size(), words);
+        return words;
+    }
+
+    @Benchmark
+    public List<String> pinyinKeystroke() {
+        String prefix = pinyinPrefixes[nextPinyin];
+        nextPinyin = (nextPinyin + 1) % pinyinPrefixes.length;
+        List<String> words = new ArrayList<>(LIMIT);
+        pinyinSession.update(prefix);
+        pinyin.addCandidates(pinyinSession, pinyinTopK, LIMIT, words);
+        return words;
+    }
+
+    /**
+     * Both dictionaries for every keystroke, English and pinyin prefixes in turn.
+     */
+    @Benchmark
+    public List<String> mixedKeystroke() {
+        String prefix = nextMixed % 2 == 0 ? englishPrefixes[nextMixed / 2] : pinyinPrefixes[nextMixed / 2];
+        nextMixed = (nextMixed + 1) % (2 * SAMPLE_SIZE);
+        List<String> words = new ArrayList<>(LIMIT);
+        mixedSearch.addWords(prefix, LIMIT, words);
+        return words;
+    }
+}
@@ -0,0 +1,88 @@
+package rkr.tinykeyboard.inputmethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rkr.tinykeyboard.dict.EnglishDictCompiler;
+import rkr.tinykeyboard.dict.PinyinDictCompiler;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup cost: compiling the source dictionaries, which is what the keyboard used to do
+ * on every start, against opening the compiled files as it does now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadBenchmark {
+    private File output;
+    private PinyinDict pinyin;
+
+    @Setup
+    public void setUp() throws IOException {
+        pinyin = PinyinDict.map(BenchmarkDictionaries.pinyin());
+        output = Files.createTempFile("hallelujah-bench", ".bin").toFile();
+        output.deleteOnExit();
+    }
+
+    @Benchmark
+    public File compileEnglishJson() throws IOException {
+        EnglishDictCompiler.compile(BenchmarkDictionaries.ENGLISH_SOURCE, output);
+        return output;
+    }
+
+    @Benchmark
+    public File compilePinyinText() throws IOException {
+        PinyinDictCompiler.compile(BenchmarkDictionaries.PINYIN_SOURCE, output);
+        return output;
+    }
+
+    @Benchmark
+    public EnglishDict loadEnglish() throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(BenchmarkDictionaries.english()))) {
+            return EnglishDict.load(in);
+        }
+    }
+
+    // Mapping in a tight loop would run out of mappings before GC unmaps them, so opening
+    // the mapped files is timed one call per iteration, as on a cold start.
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 50)
+    public EnglishDict mapEnglish() throws IOException {
+        return EnglishDict.map(BenchmarkDictionaries.english());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 50)
+    public PinyinDict mapPinyin() throws IOException {
+        return PinyinDict.map(BenchmarkDictionaries.pinyin());
+    }
+
+    @Benchmark
+    public PinyinDecoder createPinyinDecoder() {
+        return new PinyinDecoder(pinyin);
+    }
+}
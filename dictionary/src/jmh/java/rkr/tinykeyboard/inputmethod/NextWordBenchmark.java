@@ -0,0 +1,45 @@
+package rkr.tinykeyboard.inputmethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Next-word lookups as run after each commit: known words, a decoded phrase that backs
+ * off to its last word, and an unknown word.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NextWordBenchmark {
+    private static final String[] PREVIOUS = {"中国", "我", "电", "我们一起", "天气", "hello"};
+
+    private BigramDict bigrams;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        bigrams = BigramDict.map(BenchmarkDictionaries.bigrams());
+    }
+
+    @Benchmark
+    public List<String> followers() {
+        String previous = PREVIOUS[next];
+        next = (next + 1) % PREVIOUS.length;
+        return bigrams.getFollowers(previous, 20);
+    }
+}
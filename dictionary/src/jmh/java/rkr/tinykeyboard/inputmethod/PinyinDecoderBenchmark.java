@@ -0,0 +1,47 @@
+package rkr.tinykeyboard.inputmethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Phrase decoding of sentence-length pinyin; the cost should grow linearly with length.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PinyinDecoderBenchmark {
+    @Param({"womenyiqiqu", "jintiantianqihenhao", "woxiangqubeijingkankantiananmen"})
+    public String input;
+
+    private PinyinDecoder decoder;
+    private final List<String> phrases = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        decoder = new PinyinDecoder(PinyinDict.map(BenchmarkDictionaries.pinyin()));
+    }
+
+    @Benchmark
+    public List<String> decode() {
+        phrases.clear();
+        decoder.addPhrases(input, 2, phrases);
+        return phrases;
+    }
+}
@@ -0,0 +1,73 @@
+package rkr.tinykeyboard.inputmethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pinyin candidates for the three kinds of input the dictionary answers: a full pinyin
+ * key, an abbreviation, and an unfinished syllable matched as a prefix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PinyinLookupBenchmark {
+    private static final int LIMIT = 20;
+
+    public enum Kind {
+        FULL("xihongshi", "zhongguo", "women", "shijian", "dianhua", "pengyou", "xuexiao", "a"),
+        ABBREVIATION("xhs", "zg", "wm", "sj", "dh", "py", "xx", "zgrm"),
+        PREFIX("xihon", "zhongg", "wom", "shiji", "dianh", "pengyo", "xuex", "zh");
+
+        final String[] inputs;
+
+        Kind(String... inputs) {
+            this.inputs = inputs;
+        }
+    }
+
+    @Param
+    public Kind kind;
+
+    private PinyinDict dict;
+    private SearchSession session;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        dict = PinyinDict.map(BenchmarkDictionaries.pinyin());
+        session = new SearchSession(dict);
+    }
+
+    @Benchmark
+    public List<String> lookup() {
+        return dict.getCandidates(nextInput(), LIMIT);
+    }
+
+    @Benchmark
+    public List<String> sessionLookup() {
+        session.update(nextInput());
+        return dict.getCandidates(session, LIMIT);
+    }
+
+    private String nextInput() {
+        String input = kind.inputs[next];
+        next = (next + 1) % kind.inputs.length;
+        return input;
+    }
+}
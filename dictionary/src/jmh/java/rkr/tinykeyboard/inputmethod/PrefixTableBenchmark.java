@@ -0,0 +1,97 @@
+package rkr.tinykeyboard.inputmethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One and two letter prefixes answered by the dictionaries against the precomputed
+ * prefix table. The dictionaries are warm here; on a cold start they also fault in the
+ * pages of every key and tree node they walk, which the table avoids.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrefixTableBenchmark {
+    private static final int SAMPLE_SIZE = 1024;
+    private static final int LIMIT = 20;
+
+    private EnglishDict english;
+    private PinyinDict pinyin;
+    private PrefixTable table;
+    private SearchSession englishSession;
+    private SearchSession pinyinSession;
+    private RangeTopK englishTopK;
+    private RangeTopK pinyinTopK;
+    private String[] prefixes;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        english = EnglishDict.map(BenchmarkDictionaries.english());
+        pinyin = PinyinDict.map(BenchmarkDictionaries.pinyin());
+        table = PrefixTable.map(BenchmarkDictionaries.prefixTable());
+        englishSession = new SearchSession(english);
+        pinyinSession = new SearchSession(pinyin);
+        englishTopK = english.topKWalker();
+        pinyinTopK = pinyin.prefixWalker();
+        Random random = new Random(42);
+        prefixes = new String[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            char first = (char) ('a' + random.nextInt(26));
+            prefixes[i] = random.nextBoolean() ? String.valueOf(first) : new String(new char[]{first, (char) ('a' + random.nextInt(26))});
+        }
+    }
+
+    private String nextPrefix() {
+        String prefix = prefixes[next];
+        next = (next + 1) % SAMPLE_SIZE;
+        return prefix;
+    }
+
+    @Benchmark
+    public List<String> englishFromDictionary() {
+        List<String> words = new ArrayList<>(LIMIT);
+        englishSession.update(nextPrefix());
+        english.addWordsInRange(englishTopK, englishSession.start(), englishSession.end(), LIMIT, words);
+        return words;
+    }
+
+    @Benchmark
+    public List<String> englishFromTable() {
+        List<String> words = new ArrayList<>(LIMIT);
+        table.addWords(InputMode.English, nextPrefix(), LIMIT, words);
+        return words;
+    }
+
+    @Benchmark
+    public List<String> pinyinFromDictionary() {
+        List<String> words = new ArrayList<>(LIMIT);
+        pinyinSession.update(nextPrefix());
+        pinyin.addCandidates(pinyinSession, pinyinTopK, LIMIT, words);
+        return words;
+    }
+
+    @Benchmark
+    public List<String> pinyinFromTable() {
+        List<String> words = new ArrayList<>(LIMIT);
+        table.addWords(InputMode.Pinyin, nextPrefix(), LIMIT, words);
+        return words;
+    }
+}
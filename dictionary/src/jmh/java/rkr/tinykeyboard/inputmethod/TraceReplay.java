@@ -0,0 +1,124 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Times keystroke traces through the candidate pipeline on a desktop JVM: after some
+ * passes to warm up, the rest report the latency and the allocation of each event. The
+ * candidates themselves are checked by TraceGoldenTest, which runs with the other tests;
+ * this is the timing report beside it. Run with ./gradlew :dictionary:replayTraces, which
+ * replays dictionary/traces. See {@link KeystrokeTrace} for the trace format.
+ *
+ * <p>Options: --warmup-passes=N (default 500), --passes=N measured (default 50),
+ * --p99-budget-us=N, which fails the run when the 99th percentile event of a trace
+ * takes longer, and --p99-budget-bytes=N, which fails it when that event allocates more.
+ * Exits with 1 on any failure.
+ */
+public class TraceReplay {
+    // A pass is only a millisecond or so of work; the JIT needs many before it settles
+    private static final int DEFAULT_WARMUP_PASSES = 500;
+    private static final int DEFAULT_PASSES = 50;
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        int warmupPasses = DEFAULT_WARMUP_PASSES;
+        int passes = DEFAULT_PASSES;
+        double budgetMicros = Double.MAX_VALUE;
+        long budgetBytes = Long.MAX_VALUE;
+        List<File> traces = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--warmup-passes=")) {
+                warmupPasses = Integer.parseInt(arg.substring("--warmup-passes=".length()));
+            } else if (arg.startsWith("--passes=")) {
+                passes = Math.max(1, Integer.parseInt(arg.substring("--passes=".length())));
+            } else if (arg.startsWith("--p99-budget-us=")) {
+                budgetMicros = Double.parseDouble(arg.substring("--p99-budget-us=".length()));
+            } else if (arg.startsWith("--p99-budget-bytes=")) {
+                budgetBytes = Long.parseLong(arg.substring("--p99-budget-bytes=".length()));
+            } else if (new File(arg).isDirectory()) {
+                traces.addAll(KeystrokeTrace.list(new File(arg)));
+            } else {
+                traces.add(new File(arg));
+            }
+        }
+        if (traces.isEmpty()) {
+            System.err.println("No traces given");
+            System.exit(1);
+        }
+
+        Dictionaries dictionaries = Dictionaries.EMPTY
+                .withEnglish(EnglishDict.map(BenchmarkDictionaries.english()))
+                .withPinyin(PinyinDict.map(BenchmarkDictionaries.pinyin()))
+                .withBigrams(BigramDict.map(BenchmarkDictionaries.bigrams()))
+                .withPrefixes(PrefixTable.map(BenchmarkDictionaries.prefixTable()));
+        KeyProximity proximity = BenchmarkDictionaries.qwerty();
+        long allocationOverhead = allocationOverhead();
+
+        boolean failed = false;
+        for (File trace : traces) {
+            List<String> events = KeystrokeTrace.readEvents(trace);
+            for (int pass = 0; pass < warmupPasses; pass++) {
+                try (KeystrokeTrace.Replay replay = new KeystrokeTrace.Replay(dictionaries, proximity)) {
+                    for (String event : events) {
+                        replay.handle(event);
+                    }
+                }
+            }
+            long[] nanos = new long[events.size() * passes];
+            long[] bytes = new long[nanos.length];
+            int sample = 0;
+            for (int pass = 0; pass < passes; pass++) {
+                // Each pass starts a fresh generator; keep the garbage of the last one out of the samples
+                System.gc();
+                try (KeystrokeTrace.Replay replay = new KeystrokeTrace.Replay(dictionaries, proximity)) {
+                    for (String event : events) {
+                        long allocatedBefore = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+                        long start = System.nanoTime();
+                        replay.handle(event);
+                        nanos[sample] = System.nanoTime() - start;
+                        bytes[sample] = Math.max(0, THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore - allocationOverhead);
+                        sample++;
+                    }
+                }
+            }
+            Arrays.sort(nanos);
+            Arrays.sort(bytes);
+            double p99Micros = percentile(nanos, 99) / 1000.0;
+            long p99Bytes = percentile(bytes, 99);
+            System.out.printf("%s: %d events, latency p50 %.1f us, p99 %.1f us, max %.1f us; allocated p50 %d B, p99 %d B%n",
+                    trace.getName(), events.size(), percentile(nanos, 50) / 1000.0, p99Micros, nanos[nanos.length - 1] / 1000.0,
+                    percentile(bytes, 50), p99Bytes);
+            if (p99Micros > budgetMicros) {
+                System.out.printf("%s: p99 latency over the budget of %.1f us%n", trace.getName(), budgetMicros);
+                failed = true;
+            }
+            if (p99Bytes > budgetBytes) {
+                System.out.printf("%s: p99 allocation over the budget of %d B%n", trace.getName(), budgetBytes);
+                failed = true;
+            }
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    /**
+     * What reading the allocated bytes counter costs, to take off each sample.
+     */
+    private static long allocationOverhead() {
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long before = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+            overhead = Math.min(overhead, THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - before);
+        }
+        return overhead;
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        return sorted[(sorted.length - 1) * percent / 100];
+    }
+}
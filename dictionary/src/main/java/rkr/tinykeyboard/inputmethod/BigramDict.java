@@ -0,0 +1,160 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Next-word table backed by the bigram_dict.bin file produced by the compileBigramDict
+ * Gradle task. Like the other dictionaries it is memory-mapped; a lookup is a binary
+ * search over the word pool per ending of the previous phrase and a read of each follower
+ * run, already sorted best first, merged by their quantized scores.
+ */
+public class BigramDict {
+    static final int MAGIC = 0x484c4247; // "HLBG"
+    static final int VERSION = 2;
+    private static final int HEADER_SIZE = 6 * 4;
+
+    private final ByteBuffer data;
+    private final int wordCount;
+    private final int wordOffsetsStart;
+    private final int followerStartsStart;
+    private final int entriesStart;
+    private final int poolStart;
+    private final int backoffPenalty;
+
+    private BigramDict(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported bigram dictionary format");
+        }
+        wordCount = data.getInt(8);
+        int entryCount = data.getInt(12);
+        backoffPenalty = data.getInt(20);
+
+        wordOffsetsStart = HEADER_SIZE;
+        followerStartsStart = wordOffsetsStart + (wordCount + 1) * 4;
+        entriesStart = followerStartsStart + (wordCount + 1) * 4;
+        poolStart = entriesStart + entryCount * 4;
+    }
+
+    public static BigramDict map(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            return new BigramDict(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Up to {@code limit} words likely to follow {@code previous}, best first. The
+     * followers of the phrase and of each known ending of it are merged by score, an
+     * ending losing the backoff penalty for every character it drops, so a decoded sentence
+     * the table does not know is continued from its last words. Single characters are too
+     * ambiguous to back off to.
+     */
+    public List<String> getFollowers(String previous, int limit) {
+        int[] words = new int[limit];
+        int[] scores = new int[limit];
+        int count = 0;
+        int shortest = Math.min(2, previous.length());
+        for (int start = 0; previous.length() - start >= shortest; start++) {
+            int word = indexOf(previous.substring(start).getBytes(StandardCharsets.UTF_8));
+            if (word == -1) {
+                continue;
+            }
+            int end = followerStart(word + 1);
+            for (int entry = followerStart(word); entry < end; entry++) {
+                int packed = data.getInt(entriesStart + entry * 4);
+                count = insert(words, scores, count, packed >>> 8, (packed & 0xff) - backoffPenalty * start);
+            }
+        }
+        List<String> followers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            followers.add(getWord(words[i]));
+        }
+        return followers;
+    }
+
+    /**
+     * Adds a follower to the best first {@code words} and {@code scores}, which hold
+     * {@code count} and are full at their length. A word keeps its best score, and ties
+     * keep the order they came in. Returns the new count.
+     */
+    private static int insert(int[] words, int[] scores, int count, int word, int score) {
+        for (int i = 0; i < count; i++) {
+            if (words[i] == word) {
+                if (scores[i] >= score) {
+                    return count;
+                }
+                System.arraycopy(words, i + 1, words, i, count - i - 1);
+                System.arraycopy(scores, i + 1, scores, i, count - i - 1);
+                count--;
+                break;
+            }
+        }
+        int position = count;
+        while (position > 0 && scores[position - 1] < score) {
+            position--;
+        }
+        if (position == words.length) {
+            return count;
+        }
+        int kept = Math.min(count, words.length - 1) - position;
+        System.arraycopy(words, position, words, position + 1, kept);
+        System.arraycopy(scores, position, scores, position + 1, kept);
+        words[position] = word;
+        scores[position] = score;
+        return Math.min(count + 1, words.length);
+    }
+
+    private int indexOf(byte[] key) {
+        int low = 0;
+        int high = wordCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int result = compare(middle, key);
+            if (result < 0) {
+                low = middle + 1;
+            } else if (result > 0) {
+                high = middle;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int word, byte[] key) {
+        int start = wordOffset(word);
+        int length = wordOffset(word + 1) - start;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (data.get(poolStart + start + i) & 0xff) - (key[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    private String getWord(int word) {
+        int start = wordOffset(word);
+        byte[] bytes = new byte[wordOffset(word + 1) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(poolStart + start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int wordOffset(int word) {
+        return data.getInt(wordOffsetsStart + word * 4);
+    }
+
+    private int followerStart(int word) {
+        return data.getInt(followerStartsStart + word * 4);
+    }
+}
@@ -0,0 +1,45 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The latest candidate lists by input mode and text, the least recently used dropped
+ * first. Typing and deleting revisit the same short prefixes over and over, and their
+ * answers only change with the dictionaries, the layout or the learned words; the owner
+ * clears the cache when any of those change. Lists are handed out as stored, so they
+ * must not be modified once put. Not thread safe.
+ */
+class CandidateCache {
+    private final Map<InputMode, LinkedHashMap<String, List<String>>> byMode = new EnumMap<>(InputMode.class);
+
+    CandidateCache(int capacityPerMode) {
+        for (InputMode mode : InputMode.values()) {
+            byMode.put(mode, new LinkedHashMap<String, List<String>>(capacityPerMode * 4 / 3 + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+                    return size() > capacityPerMode;
+                }
+            });
+        }
+    }
+
+    /**
+     * The list put for {@code text}, or null.
+     */
+    List<String> get(InputMode mode, String text) {
+        return byMode.get(mode).get(text);
+    }
+
+    void put(InputMode mode, String text, List<String> candidates) {
+        byMode.get(mode).put(text, candidates);
+    }
+
+    void clear() {
+        for (LinkedHashMap<String, List<String>> entries : byMode.values()) {
+            entries.clear();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The candidates the keyboard offers: for the text being composed, the raw input and
+ * learned words, then the dictionaries of the input mode; after a commit, the words
+ * likely to follow it. Composition lists are cached by mode and text until the
+ * dictionaries, the layout or the learned words change.
+ *
+ * <p>Sessions, walkers and search buffers are kept between calls, so apart from the list
+ * itself only the returned words are allocated. Not thread safe; SoftKeyboard keeps one
+ * on its candidate query worker.
+ */
+class CandidateGenerator {
+    static final int MAX_CANDIDATES = 20;
+    private static final int MAX_LEARNED_CANDIDATES = 5;
+    private static final int MAX_PHRASE_CANDIDATES = 2;
+    private static final int CACHED_PREFIXES_PER_MODE = 256;
+
+    private final UserDict userDict;
+    private SearchSession englishSession;
+    private SearchSession pinyinSession;
+    private RangeTopK englishTopK;
+    private RangeTopK pinyinTopK;
+    private PinyinDecoder pinyinDecoder;
+    private FuzzyEnglishSearch fuzzySearch;
+    private MixedSearch mixedSearch;
+    private final CandidateCache cache = new CandidateCache(CACHED_PREFIXES_PER_MODE);
+    // What the cached candidates were computed against
+    private Dictionaries cachedDictionaries;
+    private KeyProximity cachedProximity;
+    private int cachedUserChanges;
+    private boolean lastQueryCached;
+
+    CandidateGenerator(UserDict userDict) {
+        this.userDict = userDict;
+    }
+
+    /**
+     * The candidates for the composition text {@code prefix}, lower case, at most
+     * {@link #MAX_CANDIDATES}. The list may come from the cache, so it must not be modified.
+     */
+    List<String> query(String prefix, InputMode mode, Dictionaries dictionaries, KeyProximity proximity) {
+        int userChanges = userDict.changeCount();
+        if (dictionaries != cachedDictionaries || proximity != cachedProximity || userChanges != cachedUserChanges) {
+            // A new snapshot, layout or learned word can change any answer
+            cache.clear();
+            cachedDictionaries = dictionaries;
+            cachedProximity = proximity;
+            cachedUserChanges = userChanges;
+        }
+        List<String> candidates = cache.get(mode, prefix);
+        lastQueryCached = candidates != null;
+        if (candidates == null) {
+            // The one list a keystroke allocates: it is handed to the adapter, so it cannot be
+            // reused, and it is cached as is, so nothing changes it afterwards
+            candidates = new ArrayList<>(MAX_CANDIDATES);
+            addCandidates(prefix, mode, dictionaries, proximity, candidates);
+            cache.put(mode, prefix, candidates);
+        }
+        return candidates;
+    }
+
+    /**
+     * Whether the last {@link #query} was answered from the cache.
+     */
+    boolean lastQueryCached() {
+        return lastQueryCached;
+    }
+
+    /**
+     * Words likely to follow {@code previousWord}: the user's own habits first, then the
+     * bigram table. Like {@link #query}, only for the thread that owns the generator. The
+     * table only has Chinese pairs so far; English predictions are the user's own, see the
+     * README's to-do list.
+     */
+    List<String> predictions(String previousWord, Dictionaries dictionaries) {
+        List<String> predictions = userDict.getFollowers(previousWord, MAX_LEARNED_CANDIDATES);
+        if (dictionaries.bigrams != null) {
+            addDistinct(predictions, dictionaries.bigrams.getFollowers(previousWord, MAX_CANDIDATES));
+        }
+        return predictions;
+    }
+
+    /**
+     * Appends the words of {@code more} that {@code words} does not hold yet, up to
+     * {@link #MAX_CANDIDATES} in all. Lists are short, so a scan beats a hash set.
+     */
+    static void addDistinct(List<String> words, List<String> more) {
+        for (int i = 0; i < more.size() && words.size() < MAX_CANDIDATES; i++) {
+            if (!words.contains(more.get(i))) {
+                words.add(more.get(i));
+            }
+        }
+    }
+
+    /**
+     * Appends distinct candidates for {@code prefix} to {@code words}, at most
+     * {@link #MAX_CANDIDATES}.
+     */
+    private void addCandidates(String prefix, InputMode mode, Dictionaries dictionaries, KeyProximity proximity, List<String> words) {
+        if (prefix.isEmpty()) {
+            return;
+        }
+        boolean full = dictionaries.tier == Dictionaries.Tier.FULL;
+        if (!full) {
+            // Let the search buffers go while memory is short; they are rebuilt on the way back up
+            fuzzySearch = null;
+            pinyinDecoder = null;
+        }
+        if (mode == InputMode.English) {
+            words.add(prefix);
+            addDistinct(words, userDict.getWords(mode, prefix, MAX_LEARNED_CANDIDATES));
+            int before = words.size();
+            // One and two letters come precomputed, even before the dictionary is mapped
+            boolean precomputed = dictionaries.prefixes != null && dictionaries.prefixes.addWords(mode, prefix, MAX_CANDIDATES - words.size(), words);
+            if (dictionaries.english == null) {
+                return; // Still loading, offer the raw input, learned and precomputed words only
+            }
+            if (!precomputed) {
+                if (englishSession == null || !englishSession.isOn(dictionaries.english)) {
+                    englishSession = new SearchSession(dictionaries.english);
+                    englishTopK = dictionaries.english.topKWalker();
+                }
+                englishSession.update(prefix);
+                // Sorted by frequency, highest first
+                dictionaries.english.addWordsInRange(englishTopK, englishSession.start(), englishSession.end(), MAX_CANDIDATES - words.size(), words);
+            }
+
+            if (words.size() == before && dictionaries.pinyinToEnglish != null) {
+                addDistinct(words, dictionaries.pinyinToEnglish.get(prefix));
+            }
+            if (full && words.size() < MAX_CANDIDATES) {
+                // Few completions; the prefix may hold a typo, so fill up with close words
+                if (fuzzySearch == null || !fuzzySearch.isOn(dictionaries.english, proximity)) {
+                    fuzzySearch = new FuzzyEnglishSearch(dictionaries.english, proximity);
+                }
+                fuzzySearch.addWords(prefix, MAX_CANDIDATES - words.size(), words);
+            }
+        } else if (mode == InputMode.Mixed) {
+            words.add(prefix);
+            addDistinct(words, userDict.getWords(InputMode.English, prefix, MAX_LEARNED_CANDIDATES));
+            addDistinct(words, userDict.getWords(InputMode.Pinyin, prefix, MAX_LEARNED_CANDIDATES));
+            if (dictionaries.english == null || dictionaries.pinyin == null) {
+                return; // Still loading, offer the raw input and learned words only
+            }
+            if (mixedSearch == null || !mixedSearch.isOn(dictionaries.english, dictionaries.pinyin)) {
+                mixedSearch = new MixedSearch(dictionaries.english, dictionaries.pinyin);
+            }
+            mixedSearch.addWords(prefix, MAX_CANDIDATES - words.size(), words);
+        } else {
+            if (dictionaries.pinyin == null) {
+                words.add(prefix); // Still loading, offer the raw input and precomputed words only
+                if (dictionaries.prefixes != null) {
+                    dictionaries.prefixes.addWords(mode, prefix, MAX_CANDIDATES - words.size(), words);
+                }
+                return;
+            }
+            if (pinyinSession == null || !pinyinSession.isOn(dictionaries.pinyin)) {
+                pinyinSession = new SearchSession(dictionaries.pinyin);
+                pinyinTopK = dictionaries.pinyin.prefixWalker();
+            }
+            pinyinSession.update(prefix);
+            addDistinct(words, userDict.getWords(mode, prefix, MAX_LEARNED_CANDIDATES));
+            if (full && !dictionaries.pinyin.hasExactKey(pinyinSession)) {
+                // Not a single word, try to read it as a phrase of several words
+                if (pinyinDecoder == null || !pinyinDecoder.isOn(dictionaries.pinyin)) {
+                    pinyinDecoder = new PinyinDecoder(dictionaries.pinyin);
+                }
+                pinyinDecoder.addPhrases(prefix, MAX_PHRASE_CANDIDATES, words);
+            }
+            if (dictionaries.prefixes == null || !dictionaries.prefixes.addWords(mode, prefix, MAX_CANDIDATES - words.size(), words)) {
+                dictionaries.pinyin.addCandidates(pinyinSession, pinyinTopK, MAX_CANDIDATES - words.size(), words);
+            }
+        }
+    }
+}
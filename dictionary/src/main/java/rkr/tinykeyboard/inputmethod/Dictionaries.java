@@ -0,0 +1,65 @@
+package rkr.tinykeyboard.inputmethod;
+
+/**
+ * An immutable snapshot of the loaded dictionaries, as DictionaryManager publishes them.
+ * A dictionary that is still loading, or that the tier has dropped, is null.
+ */
+final class Dictionaries {
+    enum Tier {
+        /** Every dictionary, with typo search and phrase decoding. */
+        FULL,
+        /** Typo search and phrase decoding are off; they touch many pages and keep buffers. */
+        REDUCED,
+        /**
+         * REDUCED without the bigram and pinyin to English dictionaries, which are unmapped.
+         * English and pinyin stay whole: they are mapped, so the kernel already drops their
+         * clean pages under pressure, and a truncated copy would only add to the footprint.
+         */
+        CORE
+    }
+
+    static final Dictionaries EMPTY = new Dictionaries(null, null, null, null, null, Tier.FULL);
+
+    final EnglishDict english;
+    final PinyinDict pinyin;
+    final PinyinEnglishDict pinyinToEnglish;
+    final BigramDict bigrams;
+    final PrefixTable prefixes;
+    final Tier tier;
+
+    private Dictionaries(EnglishDict english, PinyinDict pinyin, PinyinEnglishDict pinyinToEnglish, BigramDict bigrams, PrefixTable prefixes, Tier tier) {
+        this.english = english;
+        this.pinyin = pinyin;
+        this.pinyinToEnglish = pinyinToEnglish;
+        this.bigrams = bigrams;
+        this.prefixes = prefixes;
+        this.tier = tier;
+    }
+
+    Dictionaries withEnglish(EnglishDict english) {
+        return new Dictionaries(english, pinyin, pinyinToEnglish, bigrams, prefixes, tier);
+    }
+
+    Dictionaries withPinyin(PinyinDict pinyin) {
+        return new Dictionaries(english, pinyin, pinyinToEnglish, bigrams, prefixes, tier);
+    }
+
+    Dictionaries withPinyinToEnglish(PinyinEnglishDict pinyinToEnglish) {
+        return new Dictionaries(english, pinyin, tier == Tier.CORE ? null : pinyinToEnglish, bigrams, prefixes, tier);
+    }
+
+    Dictionaries withBigrams(BigramDict bigrams) {
+        return new Dictionaries(english, pinyin, pinyinToEnglish, tier == Tier.CORE ? null : bigrams, prefixes, tier);
+    }
+
+    Dictionaries withPrefixes(PrefixTable prefixes) {
+        return new Dictionaries(english, pinyin, pinyinToEnglish, bigrams, prefixes, tier);
+    }
+
+    Dictionaries withTier(Tier tier) {
+        if (tier == Tier.CORE) {
+            return new Dictionaries(english, pinyin, null, null, prefixes, tier);
+        }
+        return new Dictionaries(english, pinyin, pinyinToEnglish, bigrams, prefixes, tier);
+    }
+}
@@ -0,0 +1,305 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only view over the english_dict.bin asset produced by the compileEnglishDict
+ * Gradle task. Keys are stored sorted in one byte pool next to parallel int arrays of
+ * key offsets and frequency ranks, so a prefix query is a pair of binary searches and
+ * no per-word objects exist until a word is returned. On device the file is
+ * memory-mapped, which keeps it off the Java heap.
+ */
+public class EnglishDict implements SearchSession.Keys {
+    static final int MAGIC = 0x484c454e; // "HLEN"
+    static final int VERSION = 4;
+    private static final int HEADER_SIZE = 4 * 4 + 8;
+    private static final int FREQUENCY_BYTES = 5;
+    private static final int FIRST_BYTE_INDEX_SIZE = 257;
+    private static final int PAGE_SIZE = 4096;
+
+    private final ByteBuffer data;
+    private final int count;
+    private final int firstByteIndexStart;
+    private final int offsetsStart;
+    private final int ranksStart;
+    private final int frequenciesStart;
+    private final int treeStart;
+    private final int poolStart;
+    private final double totalFrequency;
+
+    private EnglishDict(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported English dictionary format");
+        }
+        count = data.getInt(8);
+        totalFrequency = data.getDouble(16);
+        firstByteIndexStart = HEADER_SIZE;
+        offsetsStart = firstByteIndexStart + FIRST_BYTE_INDEX_SIZE * 4;
+        ranksStart = offsetsStart + (count + 1) * 4;
+        frequenciesStart = ranksStart + count * 4;
+        treeStart = frequenciesStart + count * FREQUENCY_BYTES;
+        poolStart = treeStart + 2 * count * 4;
+    }
+
+    public static EnglishDict map(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            return new EnglishDict(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads the whole dictionary from a stream into a single heap buffer.
+     */
+    public static EnglishDict load(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        byte[] header = new byte[HEADER_SIZE];
+        in.readFully(header);
+        ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+        int count = headerBuffer.getInt(8);
+        int poolSize = headerBuffer.getInt(12);
+
+        byte[] content = new byte[HEADER_SIZE + FIRST_BYTE_INDEX_SIZE * 4 + (count + 1) * 4 + count * 4
+                + count * FREQUENCY_BYTES + 2 * count * 4 + poolSize];
+        System.arraycopy(header, 0, content, 0, HEADER_SIZE);
+        in.readFully(content, HEADER_SIZE, content.length - HEADER_SIZE);
+        return new EnglishDict(ByteBuffer.wrap(content));
+    }
+
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public int keyCount() {
+        return count;
+    }
+
+    public String getWord(int index) {
+        int start = keyOffset(index);
+        int length = keyOffset(index + 1) - start;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (data.get(poolStart + start + i) & 0xff);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Number of words starting with {@code first}.
+     */
+    public int countStartingWith(char first) {
+        if (first >= FIRST_BYTE_INDEX_SIZE - 1) {
+            return 0;
+        }
+        return data.getInt(firstByteIndexStart + (first + 1) * 4) - data.getInt(firstByteIndexStart + first * 4);
+    }
+
+    /**
+     * Faults in the pages holding the words that start with {@code first}: their keys,
+     * offsets, ranks and the part of the top-K tree above them. Keys are sorted, so each
+     * of these is one contiguous run per first letter (per level for the tree) and the
+     * letter's shard can be warmed without reading the rest of the file. Frequencies are
+     * stored by rank, not by key, and are left to load on first use.
+     */
+    public void prefetch(char first) {
+        if (first >= FIRST_BYTE_INDEX_SIZE - 1) {
+            return;
+        }
+        int start = data.getInt(firstByteIndexStart + first * 4);
+        int end = data.getInt(firstByteIndexStart + (first + 1) * 4);
+        if (start == end) {
+            return;
+        }
+        touch(offsetsStart + start * 4, offsetsStart + (end + 1) * 4);
+        touch(ranksStart + start * 4, ranksStart + end * 4);
+        touch(poolStart + keyOffset(start), poolStart + keyOffset(end));
+        for (int low = start + count, high = end + count; low > 0 && low < high; low >>= 1, high = (high + 1) >> 1) {
+            touch(treeStart + low * 4, treeStart + high * 4);
+        }
+    }
+
+    private void touch(int from, int to) {
+        for (int position = from; position < to; position += PAGE_SIZE) {
+            data.get(position);
+        }
+        if (to > from) {
+            data.get(to - 1);
+        }
+    }
+
+    /**
+     * 0 for the most frequent word; words with the same frequency are ranked in key order.
+     */
+    public int getRank(int index) {
+        return data.getInt(ranksStart + index * 4);
+    }
+
+    public long getFrequency(int index) {
+        int position = frequenciesStart + getRank(index) * FREQUENCY_BYTES;
+        long frequency = 0;
+        for (int i = 0; i < FREQUENCY_BYTES; i++) {
+            frequency = (frequency << 8) | (data.get(position + i) & 0xff);
+        }
+        return frequency;
+    }
+
+    /**
+     * Sum of the frequencies of all words, for turning a frequency into a share of use.
+     */
+    double totalFrequency() {
+        return totalFrequency;
+    }
+
+    /**
+     * Returns the index of {@code word}, or -1 if it is not in the dictionary.
+     */
+    public int indexOf(CharSequence word) {
+        int index = prefixStart(word);
+        if (index < count && compare(index, word, false) == 0) {
+            return index;
+        }
+        return -1;
+    }
+
+    /**
+     * First index whose key is greater than or equal to {@code prefix}.
+     */
+    public int prefixStart(CharSequence prefix) {
+        return search(prefix, false);
+    }
+
+    /**
+     * First index after {@code prefixStart(prefix)} whose key does not start with {@code prefix}.
+     */
+    public int prefixEnd(CharSequence prefix) {
+        return search(prefix, true);
+    }
+
+    /**
+     * The {@code limit} most frequent words starting with {@code prefix}, highest frequency
+     * first; words with the same frequency keep their key order. Only the returned words
+     * are visited, however many words share the prefix.
+     */
+    public List<String> getWordsWithPrefix(CharSequence prefix, int limit) {
+        return getWordsInRange(prefixStart(prefix), prefixEnd(prefix), limit);
+    }
+
+    /**
+     * Same as {@link #getWordsWithPrefix} for a prefix range already narrowed by a
+     * {@link SearchSession}.
+     */
+    public List<String> getWordsInRange(int start, int end, int limit) {
+        List<String> words = new ArrayList<>(limit);
+        addWordsInRange(topKWalker(), start, end, limit, words);
+        return words;
+    }
+
+    /**
+     * Appends to {@code words} up to {@code limit} of the most frequent words in the range
+     * that it does not already hold. {@code topK} comes from {@link #topKWalker()} and is
+     * reused across calls, so a keystroke allocates only the returned words.
+     */
+    void addWordsInRange(RangeTopK topK, int start, int end, int limit, List<String> words) {
+        topK.reset(start, end);
+        int added = 0;
+        int index;
+        while (added < limit && (index = topK.next()) != -1) {
+            String word = getWord(index);
+            if (!words.contains(word)) {
+                words.add(word);
+                added++;
+            }
+        }
+    }
+
+    /**
+     * A walker over key indices, most frequent first.
+     */
+    RangeTopK topKWalker() {
+        return new RangeTopK(data, treeStart, count, this::compareByFrequency);
+    }
+
+    private int compareByFrequency(int a, int b) {
+        return Integer.compare(getRank(a), getRank(b));
+    }
+
+    @Override
+    public int search(int start, int end, int position, char ch, boolean upper) {
+        while (start < end) {
+            int middle = (start + end) >>> 1;
+            int c = charAt(middle, position);
+            if (c < ch || (upper && c == ch)) {
+                start = middle + 1;
+            } else {
+                end = middle;
+            }
+        }
+        return start;
+    }
+
+    private int search(CharSequence prefix, boolean upper) {
+        int low = 0;
+        int high = count;
+        if (prefix.length() > 0) {
+            char first = prefix.charAt(0);
+            if (first >= FIRST_BYTE_INDEX_SIZE - 1) {
+                return count;
+            }
+            low = data.getInt(firstByteIndexStart + first * 4);
+            high = data.getInt(firstByteIndexStart + (first + 1) * 4);
+        }
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int result = compare(middle, prefix, true);
+            if (result < 0 || (upper && result == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the key at {@code index} with {@code text}. When {@code asPrefix} is set,
+     * a key that starts with {@code text} compares as equal. Keys are ASCII, which the
+     * compiler enforces, so bytes can be compared with chars directly.
+     */
+    private int compare(int index, CharSequence text, boolean asPrefix) {
+        int start = poolStart + keyOffset(index);
+        int length = keyOffset(index + 1) - keyOffset(index);
+        int textLength = text.length();
+        int common = Math.min(length, textLength);
+        for (int i = 0; i < common; i++) {
+            int difference = (data.get(start + i) & 0xff) - text.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        if (asPrefix && length >= textLength) {
+            return 0;
+        }
+        return length - textLength;
+    }
+
+    /**
+     * The character at {@code position} of the key at {@code index}, or -1 past its end.
+     */
+    int charAt(int index, int position) {
+        int offset = keyOffset(index);
+        return keyOffset(index + 1) - offset > position ? data.get(poolStart + offset + position) & 0xff : -1;
+    }
+
+    private int keyOffset(int index) {
+        return data.getInt(offsetsStart + index * 4);
+    }
+}
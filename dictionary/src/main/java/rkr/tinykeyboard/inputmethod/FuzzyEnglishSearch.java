@@ -0,0 +1,246 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Typo-tolerant completion: words that start with something within a small edit
+ * distance of the typed prefix. The sorted keys of the dictionary are walked as an
+ * implicit trie, carrying one row of a Levenshtein table per depth, and a branch is
+ * abandoned as soon as no cell of its row is within the distance. Substitutions of
+ * neighbouring keys cost less (see {@link KeyProximity}), and swapping two adjacent
+ * letters counts as one edit.
+ *
+ * <p>Words that start with the prefix itself are left out; they are the exact matches.
+ * Not thread safe; use one search per thread.
+ */
+class FuzzyEnglishSearch {
+    // One edit costs about as much as being 150 times less frequent.
+    private static final double EDIT_PENALTY = Math.log(150);
+    private static final int SHORT_PREFIX = 3;
+
+    private final EnglishDict dict;
+    private final KeyProximity proximity;
+    private final RangeTopK topK;
+
+    private CharSequence typed;
+    private float maxDistance;
+    private float[][] rows = new float[0][];
+    private char[] path = new char[0];
+    // Key ranges whose words complete a prefix within the distance, with that distance
+    private int[] rangeStarts = new int[16];
+    private int[] rangeEnds = new int[16];
+    private float[] rangeCosts = new float[16];
+    private int rangeCount;
+    private int[] bestIndices = new int[0];
+    private double[] bestScores = new double[0];
+
+    FuzzyEnglishSearch(EnglishDict dict, KeyProximity proximity) {
+        this.dict = dict;
+        this.proximity = proximity;
+        topK = dict.topKWalker();
+    }
+
+    boolean isOn(EnglishDict dict, KeyProximity proximity) {
+        return this.dict == dict && this.proximity == proximity;
+    }
+
+    /**
+     * The edit distance allowed for a prefix: none for very short ones, where almost
+     * every word would match, then one edit, then two.
+     */
+    static float maxDistance(int length) {
+        return length < 3 ? 0 : length < 6 ? 1 : 2;
+    }
+
+    /**
+     * Up to {@code limit} words near {@code prefix}, best first by frequency less a
+     * penalty per edit.
+     */
+    List<String> getWords(CharSequence prefix, int limit) {
+        List<String> words = new ArrayList<>(Math.max(0, limit));
+        addWords(prefix, limit, words);
+        return words;
+    }
+
+    /**
+     * Appends to {@code words} up to {@code limit} words near {@code prefix} that it does
+     * not already hold. Search state is reused, so this allocates only the added words.
+     */
+    void addWords(CharSequence prefix, int limit, List<String> words) {
+        typed = prefix;
+        maxDistance = maxDistance(prefix.length());
+        rangeCount = 0;
+        if (maxDistance == 0 || limit <= 0) {
+            return;
+        }
+
+        int width = prefix.length() + 1;
+        int maxDepth = prefix.length() + (int) maxDistance;
+        if (rows.length < maxDepth + 1 || rows[0].length < width) {
+            rows = new float[maxDepth + 1][width];
+            path = new char[maxDepth + 1];
+        }
+        for (int j = 0; j < width; j++) {
+            rows[0][j] = j;
+        }
+        visitChildren(0, dict.keyCount(), 0, Float.MAX_VALUE);
+        collect(limit, words);
+    }
+
+    private void visitChildren(int start, int end, int depth, float pathCost) {
+        if (depth == typed.length() + (int) maxDistance) {
+            return;
+        }
+        int child = start;
+        // The key equal to the node itself sorts first and has no character here
+        if (child < end && dict.charAt(child, depth) == -1) {
+            child++;
+        }
+        while (child < end) {
+            char ch = (char) dict.charAt(child, depth);
+            int childEnd = childEnd(child, end, depth, ch);
+            // A wrong first letter is rare, and allowing one would search nearly every
+            // branch of the dictionary, so only the typed key and its neighbours start a word.
+            if (depth > 0 || proximity.substitutionCost(typed.charAt(0), ch) <= KeyProximity.ADJACENT_COST) {
+                visit(child, childEnd, depth + 1, ch, pathCost);
+            }
+            child = childEnd;
+        }
+    }
+
+    /**
+     * End of the keys from {@code child} that have {@code ch} at {@code depth}. Gallops
+     * ahead before the binary search, so small branches of a wide node stay cheap.
+     */
+    private int childEnd(int child, int end, int depth, char ch) {
+        int known = child;
+        int step = 1;
+        int bound = child + 1;
+        while (bound < end && dict.charAt(bound, depth) == ch) {
+            known = bound;
+            step <<= 1;
+            bound = known + step;
+        }
+        return dict.search(known + 1, Math.min(bound, end), depth, ch, true);
+    }
+
+    private void visit(int start, int end, int depth, char ch, float pathCost) {
+        path[depth] = ch;
+        float[] row = rows[depth];
+        float[] previous = rows[depth - 1];
+        int width = typed.length() + 1;
+        int band = (int) maxDistance;
+        float outside = maxDistance + 1;
+        // Cells further than the distance from the diagonal can never be within it
+        int low = Math.max(1, depth - band);
+        int high = Math.min(width - 1, depth + band);
+        row[0] = depth;
+        for (int j = 1; j < low; j++) {
+            row[j] = outside;
+        }
+        float best = depth <= band ? row[0] : outside;
+        for (int j = low; j <= high; j++) {
+            char typedChar = typed.charAt(j - 1);
+            float cost = Math.min(previous[j] + 1, row[j - 1] + 1);
+            cost = Math.min(cost, previous[j - 1] + proximity.substitutionCost(typedChar, ch));
+            if (depth >= 2 && j >= 2 && typedChar == path[depth - 1] && typed.charAt(j - 2) == ch) {
+                cost = Math.min(cost, rows[depth - 2][j - 2] + 1);
+            }
+            row[j] = cost;
+            best = Math.min(best, cost);
+        }
+        for (int j = high + 1; j < width; j++) {
+            row[j] = outside;
+        }
+        // At most one edit among the first letters: two there are rare, and allowing them
+        // would visit most short prefixes of the dictionary.
+        if (best > (depth <= SHORT_PREFIX ? Math.min(1, maxDistance) : maxDistance)) {
+            return;
+        }
+
+        float completionCost = row[width - 1];
+        if (completionCost == 0) {
+            return; // Exact prefix; neither it nor anything below is a typo
+        }
+        if (completionCost <= maxDistance && completionCost < pathCost) {
+            addRange(start, end, completionCost);
+            pathCost = completionCost;
+        }
+        visitChildren(start, end, depth, pathCost);
+    }
+
+    private void addRange(int start, int end, float cost) {
+        if (rangeCount == rangeStarts.length) {
+            rangeStarts = Arrays.copyOf(rangeStarts, rangeCount * 2);
+            rangeEnds = Arrays.copyOf(rangeEnds, rangeCount * 2);
+            rangeCosts = Arrays.copyOf(rangeCosts, rangeCount * 2);
+        }
+        rangeStarts[rangeCount] = start;
+        rangeEnds[rangeCount] = end;
+        rangeCosts[rangeCount] = cost;
+        rangeCount++;
+    }
+
+    /**
+     * Merges the most frequent words of every range into the best {@code limit} scores.
+     * Words in a range come out by falling frequency, so a range is left as soon as its
+     * next word cannot beat the current last place. Ranges are nested when a deeper
+     * prefix is closer, and a word among the best of an outer range is also among the
+     * best of the inner one, so it always gets its lowest cost.
+     */
+    private void collect(int limit, List<String> words) {
+        if (bestIndices.length < limit) {
+            bestIndices = new int[limit];
+            bestScores = new double[limit];
+        }
+        int size = 0;
+        for (int r = 0; r < rangeCount; r++) {
+            topK.reset(rangeStarts[r], rangeEnds[r]);
+            double penalty = EDIT_PENALTY * rangeCosts[r];
+            int index;
+            while ((index = topK.next()) != -1) {
+                double score = Math.log(dict.getFrequency(index) + 1) - penalty;
+                if (size == limit && score <= bestScores[limit - 1]) {
+                    break;
+                }
+                size = insert(index, score, size, limit);
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            String word = dict.getWord(bestIndices[i]);
+            if (!words.contains(word)) {
+                words.add(word);
+            }
+        }
+    }
+
+    /**
+     * Adds a word to the best list, kept sorted by score, replacing a worse score for the
+     * same word. Returns the new size.
+     */
+    private int insert(int index, double score, int size, int limit) {
+        for (int i = 0; i < size; i++) {
+            if (bestIndices[i] == index) {
+                if (bestScores[i] >= score) {
+                    return size;
+                }
+                System.arraycopy(bestIndices, i + 1, bestIndices, i, size - i - 1);
+                System.arraycopy(bestScores, i + 1, bestScores, i, size - i - 1);
+                size--;
+                break;
+            }
+        }
+        int i = Math.min(size, limit - 1);
+        while (i > 0 && bestScores[i - 1] < score) {
+            bestIndices[i] = bestIndices[i - 1];
+            bestScores[i] = bestScores[i - 1];
+            i--;
+        }
+        bestIndices[i] = index;
+        bestScores[i] = score;
+        return Math.min(size + 1, limit);
+    }
+}
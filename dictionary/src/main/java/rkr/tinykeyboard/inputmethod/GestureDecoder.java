@@ -0,0 +1,297 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Swipe typing: turns one finger path over the letter keys into ranked English words.
+ * The path is resampled to {@link #SAMPLES} points. Candidates come from a beam search
+ * over the sorted dictionary keys, walked as an implicit trie: the first letter must be
+ * under the start of the path, each next letter must pass close to the path after the
+ * previous one, and a word only completes when its last letter is under the end. The
+ * surviving words are then ranked by how far their ideal path, the polyline through
+ * their key centres, lies from the swipe, against how frequent they are.
+ *
+ * <p>Coordinates are in key units, as for {@link KeyProximity}. A decoder belongs to one
+ * layout and works on any dictionary. Not thread safe; use one decoder per thread.
+ */
+class GestureDecoder {
+    static final int SAMPLES = 48;
+    private static final int LETTERS = 26;
+    // How far, in keys, the path may pass from a letter it spells, and end from the last one
+    private static final float NEAR_DISTANCE = 1.0f;
+    private static final float END_DISTANCE = 1.0f;
+    private static final int BEAM_WIDTH = 128;
+    private static final int MAX_WORD_LENGTH = 24;
+    private static final int MAX_COMPLETIONS = 256;
+    // Pruning credits each key of path covered with this much cost, so longer prefixes
+    // are not crowded out by short ones that have matched less of the path
+    private static final float PROGRESS_CREDIT = 0.3f;
+    // Being one key off the swipe on average costs about as much as being 3000 times less frequent
+    private static final double DISTANCE_PENALTY = Math.log(3000);
+
+    private final float[] keyX = new float[LETTERS];
+    private final float[] keyY = new float[LETTERS];
+    private final boolean[] hasKey = new boolean[LETTERS];
+
+    // The dictionary of the decode in progress
+    private EnglishDict dict;
+    private final float[] sampleX = new float[SAMPLES];
+    private final float[] sampleY = new float[SAMPLES];
+    private float sampleStep;
+    // For each letter, the first sample at or after each sample within NEAR_DISTANCE, or -1
+    private final int[] nextNear = new int[LETTERS * SAMPLES];
+
+    // The beam at the current depth and the states it expands to: key range, the sample
+    // the last letter was matched to, and the summed distance of the matches.
+    private int[] starts = new int[BEAM_WIDTH];
+    private int[] ends = new int[BEAM_WIDTH];
+    private int[] indices = new int[BEAM_WIDTH];
+    private float[] costs = new float[BEAM_WIDTH];
+    private int[] nextStarts = new int[BEAM_WIDTH * LETTERS];
+    private int[] nextEnds = new int[BEAM_WIDTH * LETTERS];
+    private int[] nextIndices = new int[BEAM_WIDTH * LETTERS];
+    private float[] nextCosts = new float[BEAM_WIDTH * LETTERS];
+    private final float[] pruneCosts = new float[BEAM_WIDTH * LETTERS];
+    private final float[] sortedCosts = new float[BEAM_WIDTH * LETTERS];
+
+    private final int[] completions = new int[MAX_COMPLETIONS];
+    private int completionCount;
+    private final float[] wordX = new float[MAX_WORD_LENGTH];
+    private final float[] wordY = new float[MAX_WORD_LENGTH];
+    private final float[] idealX = new float[SAMPLES];
+    private final float[] idealY = new float[SAMPLES];
+    private int[] bestIndices = new int[0];
+    private double[] bestScores = new double[0];
+
+    /**
+     * Keys are given as for {@link KeyProximity}: code and centre. Only a to z are used.
+     */
+    GestureDecoder(int[] codes, float[] x, float[] y) {
+        for (int i = 0; i < codes.length; i++) {
+            int letter = codes[i] - 'a';
+            if (letter >= 0 && letter < LETTERS) {
+                keyX[letter] = x[i];
+                keyY[letter] = y[i];
+                hasKey[letter] = true;
+            }
+        }
+    }
+
+    /**
+     * Up to {@code limit} words for the path through the first {@code count} points,
+     * best first; empty when no word fits the path.
+     */
+    List<String> decode(EnglishDict dict, float[] x, float[] y, int count, int limit) {
+        List<String> words = new ArrayList<>(Math.max(0, limit));
+        if (count == 0 || limit <= 0) {
+            return words;
+        }
+        this.dict = dict;
+        sampleStep = resample(x, y, count, sampleX, sampleY);
+        for (int letter = 0; letter < LETTERS; letter++) {
+            int next = -1;
+            for (int j = SAMPLES - 1; j >= 0; j--) {
+                if (hasKey[letter] && distance(letter, j) <= NEAR_DISTANCE) {
+                    next = j;
+                }
+                nextNear[letter * SAMPLES + j] = next;
+            }
+        }
+
+        completionCount = 0;
+        // The root: every key, nothing matched yet
+        starts[0] = 0;
+        ends[0] = dict.keyCount();
+        indices[0] = 0;
+        costs[0] = 0;
+        int beamSize = 1;
+        for (int depth = 0; depth < MAX_WORD_LENGTH && beamSize > 0; depth++) {
+            int nextSize = expand(beamSize, depth);
+            beamSize = prune(nextSize);
+        }
+        rank(limit, words);
+        this.dict = null;
+        return words;
+    }
+
+    /**
+     * Extends every state of the beam by each letter whose key the rest of the path passes,
+     * narrowing its key range to that letter. Returns the number of new states.
+     */
+    private int expand(int beamSize, int depth) {
+        int nextSize = 0;
+        for (int state = 0; state < beamSize; state++) {
+            int start = starts[state];
+            int end = ends[state];
+            for (int letter = 0; letter < LETTERS; letter++) {
+                int near = nextNear[letter * SAMPLES + indices[state]];
+                // The first letter is under the start of the path
+                if (near == -1 || (depth == 0 && near != 0)) {
+                    continue;
+                }
+                char ch = (char) ('a' + letter);
+                int childStart = dict.search(start, end, depth, ch, false);
+                int childEnd = dict.search(childStart, end, depth, ch, true);
+                if (childStart == childEnd) {
+                    continue;
+                }
+                // Follow the path while it still approaches the key
+                while (near + 1 < SAMPLES && distance(letter, near + 1) < distance(letter, near)) {
+                    near++;
+                }
+                float cost = costs[state] + distance(letter, near) + detour(indices[state], near);
+                nextStarts[nextSize] = childStart;
+                nextEnds[nextSize] = childEnd;
+                nextIndices[nextSize] = near;
+                nextCosts[nextSize] = cost;
+                pruneCosts[nextSize] = cost - PROGRESS_CREDIT * near * sampleStep;
+                nextSize++;
+                // The prefix itself is a word when it is the first key of its range
+                if (dict.charAt(childStart, depth + 1) == -1 && distance(letter, SAMPLES - 1) <= END_DISTANCE && detour(near, SAMPLES - 1) <= NEAR_DISTANCE) {
+                    addCompletion(childStart);
+                }
+            }
+        }
+        return nextSize;
+    }
+
+    /**
+     * Keeps the {@link #BEAM_WIDTH} cheapest new states, less their progress credit, as
+     * the next beam.
+     */
+    private int prune(int nextSize) {
+        float threshold = Float.MAX_VALUE;
+        if (nextSize > BEAM_WIDTH) {
+            System.arraycopy(pruneCosts, 0, sortedCosts, 0, nextSize);
+            Arrays.sort(sortedCosts, 0, nextSize);
+            threshold = sortedCosts[BEAM_WIDTH - 1];
+        }
+        int size = 0;
+        for (int state = 0; state < nextSize && size < BEAM_WIDTH; state++) {
+            if (pruneCosts[state] <= threshold) {
+                starts[size] = nextStarts[state];
+                ends[size] = nextEnds[state];
+                indices[size] = nextIndices[state];
+                costs[size] = nextCosts[state];
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private void addCompletion(int index) {
+        if (completionCount < MAX_COMPLETIONS) {
+            completions[completionCount++] = index;
+        }
+    }
+
+    /**
+     * Scores every completed word by frequency less the mean distance between its ideal
+     * path and the swipe, and adds the best {@code limit} to {@code words}.
+     */
+    private void rank(int limit, List<String> words) {
+        if (bestIndices.length < limit) {
+            bestIndices = new int[limit];
+            bestScores = new double[limit];
+        }
+        int size = 0;
+        for (int c = 0; c < completionCount; c++) {
+            int index = completions[c];
+            double score = Math.log(dict.getFrequency(index) + 1) - DISTANCE_PENALTY * idealDistance(index);
+            if (size == limit && score <= bestScores[limit - 1]) {
+                continue;
+            }
+            int i = Math.min(size, limit - 1);
+            while (i > 0 && bestScores[i - 1] < score) {
+                bestIndices[i] = bestIndices[i - 1];
+                bestScores[i] = bestScores[i - 1];
+                i--;
+            }
+            bestIndices[i] = index;
+            bestScores[i] = score;
+            size = Math.min(size + 1, limit);
+        }
+        for (int i = 0; i < size; i++) {
+            words.add(dict.getWord(bestIndices[i]));
+        }
+    }
+
+    /**
+     * Mean distance between the swipe and the path through the key centres of a word,
+     * both resampled alike. A repeated letter adds no point, as it adds no movement.
+     */
+    private float idealDistance(int index) {
+        int points = 0;
+        int previous = -1;
+        for (int position = 0; position < MAX_WORD_LENGTH; position++) {
+            int ch = dict.charAt(index, position);
+            if (ch == -1) {
+                break;
+            }
+            int letter = ch - 'a';
+            if (letter != previous) {
+                wordX[points] = keyX[letter];
+                wordY[points] = keyY[letter];
+                points++;
+                previous = letter;
+            }
+        }
+        resample(wordX, wordY, points, idealX, idealY);
+        float total = 0;
+        for (int j = 0; j < SAMPLES; j++) {
+            float dx = idealX[j] - sampleX[j];
+            float dy = idealY[j] - sampleY[j];
+            total += (float) Math.sqrt(dx * dx + dy * dy);
+        }
+        return total / SAMPLES;
+    }
+
+    /**
+     * How much longer the swipe is between two samples than the straight line joining
+     * them. Letters are joined by straight strokes, so a long detour means the path
+     * turned at a key the word skips.
+     */
+    private float detour(int from, int to) {
+        return (to - from) * sampleStep - (float) Math.hypot(sampleX[to] - sampleX[from], sampleY[to] - sampleY[from]);
+    }
+
+    private float distance(int letter, int sample) {
+        float dx = keyX[letter] - sampleX[sample];
+        float dy = keyY[letter] - sampleY[sample];
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Resamples the polyline through {@code count} points into {@link #SAMPLES} points
+     * evenly spaced along its length, and returns the spacing.
+     */
+    static float resample(float[] x, float[] y, int count, float[] outX, float[] outY) {
+        float length = 0;
+        for (int i = 1; i < count; i++) {
+            length += (float) Math.hypot(x[i] - x[i - 1], y[i] - y[i - 1]);
+        }
+        if (length == 0) {
+            Arrays.fill(outX, x[0]);
+            Arrays.fill(outY, y[0]);
+            return 0;
+        }
+        float step = length / (SAMPLES - 1);
+        int segment = 1;
+        float segmentStart = 0; // Length of the path up to point segment - 1
+        float segmentLength = (float) Math.hypot(x[1] - x[0], y[1] - y[0]);
+        for (int j = 0; j < SAMPLES; j++) {
+            float target = Math.min(j * step, length);
+            while (segment < count - 1 && segmentStart + segmentLength < target) {
+                segmentStart += segmentLength;
+                segment++;
+                segmentLength = (float) Math.hypot(x[segment] - x[segment - 1], y[segment] - y[segment - 1]);
+            }
+            float t = segmentLength == 0 ? 0 : Math.min(1, (target - segmentStart) / segmentLength);
+            outX[j] = x[segment - 1] + t * (x[segment] - x[segment - 1]);
+            outY[j] = y[segment - 1] + t * (y[segment] - y[segment - 1]);
+        }
+        return step;
+    }
+}
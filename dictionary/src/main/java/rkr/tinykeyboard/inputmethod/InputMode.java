@@ -2,5 +2,7 @@ package rkr.tinykeyboard.inputmethod;
 
 public enum InputMode {
     English,
-    Pinyin
+    Pinyin,
+    // English words and pinyin in one candidate list
+    Mixed
 }
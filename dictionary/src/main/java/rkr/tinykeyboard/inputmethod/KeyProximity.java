@@ -0,0 +1,51 @@
+package rkr.tinykeyboard.inputmethod;
+
+/**
+ * Substitution costs between letters from the key layout: hitting a neighbouring key is
+ * a likelier slip than hitting a distant one, so it costs less.
+ */
+public class KeyProximity {
+    static final float ADJACENT_COST = 0.5f;
+    private static final int ASCII = 128;
+    // Squared distance in key units; covers the row neighbours and the staggered
+    // keys above and below, but not keys two apart.
+    private static final float ADJACENT_DISTANCE_SQUARED = 1.5f;
+
+    private final boolean[] adjacent = new boolean[ASCII * ASCII];
+
+    /**
+     * Keys are given by their code and the position of their centre, measured in key
+     * widths horizontally and key heights vertically. Codes outside ASCII are ignored.
+     */
+    public KeyProximity(int[] codes, float[] x, float[] y) {
+        for (int i = 0; i < codes.length; i++) {
+            for (int j = 0; j < codes.length; j++) {
+                if (i == j || codes[i] < 0 || codes[i] >= ASCII || codes[j] < 0 || codes[j] >= ASCII) {
+                    continue;
+                }
+                float dx = x[i] - x[j];
+                float dy = y[i] - y[j];
+                if (dx * dx + dy * dy <= ADJACENT_DISTANCE_SQUARED) {
+                    adjacent[codes[i] * ASCII + codes[j]] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Every substitution costs the same, for when no layout is known.
+     */
+    public static KeyProximity uniform() {
+        return new KeyProximity(new int[0], new float[0], new float[0]);
+    }
+
+    float substitutionCost(char typed, char intended) {
+        if (typed == intended) {
+            return 0;
+        }
+        if (typed < ASCII && intended < ASCII && adjacent[typed * ASCII + intended]) {
+            return ADJACENT_COST;
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,98 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.util.List;
+
+/**
+ * Candidates from the English and the pinyin dictionary in one list. English frequencies
+ * are corpus counts and pinyin ones are scaled floats, so neither compares with the
+ * other as is; each is divided by the total of its own dictionary, which makes both the
+ * share of use of the word in its language. Both sides already come out best first, so
+ * the lists are merged a word at a time and only the returned words are looked up.
+ *
+ * <p>Sessions and walkers are kept between calls. Not thread safe; use one per thread.
+ */
+class MixedSearch {
+    private final EnglishDict english;
+    private final PinyinDict pinyin;
+    private final SearchSession englishSession;
+    private final SearchSession pinyinSession;
+    private final RangeTopK englishTopK;
+    private final RangeTopK pinyinTopK;
+    private final double englishTotal;
+    private final double pinyinTotal;
+
+    // The pinyin side of the current merge: a run read in order for an exact key, or a
+    // walk over the runs of every key with the prefix
+    private boolean pinyinExact;
+    private int pinyinPosition;
+    private int pinyinEnd;
+
+    MixedSearch(EnglishDict english, PinyinDict pinyin) {
+        this.english = english;
+        this.pinyin = pinyin;
+        englishSession = new SearchSession(english);
+        pinyinSession = new SearchSession(pinyin);
+        englishTopK = english.topKWalker();
+        pinyinTopK = pinyin.prefixWalker();
+        englishTotal = Math.max(1, english.totalFrequency());
+        pinyinTotal = Math.max(1, pinyin.totalFrequency());
+    }
+
+    boolean isOn(EnglishDict english, PinyinDict pinyin) {
+        return this.english == english && this.pinyin == pinyin;
+    }
+
+    /**
+     * Appends to {@code words} up to {@code limit} words for {@code prefix} that it does
+     * not already hold, English and Chinese together, most used first.
+     */
+    void addWords(CharSequence prefix, int limit, List<String> words) {
+        if (prefix.length() == 0) {
+            return;
+        }
+        englishSession.update(prefix);
+        englishTopK.reset(englishSession.start(), englishSession.end());
+        pinyinSession.update(prefix);
+        pinyinExact = pinyin.hasExactKey(pinyinSession);
+        if (pinyinExact) {
+            pinyinPosition = pinyin.runStart(pinyinSession.start());
+            pinyinEnd = pinyin.runStart(pinyinSession.start() + 1);
+        } else {
+            pinyinTopK.reset(pinyin.runStart(pinyinSession.start()), pinyin.runStart(pinyinSession.end()));
+        }
+
+        int englishIndex = englishTopK.next();
+        int pinyinRun = nextPinyinRun();
+        int added = 0;
+        while (added < limit && (englishIndex != -1 || pinyinRun != -1)) {
+            String word;
+            if (pinyinRun == -1 || (englishIndex != -1 && englishShare(englishIndex) >= pinyinShare(pinyinRun))) {
+                word = english.getWord(englishIndex);
+                englishIndex = englishTopK.next();
+            } else {
+                // The same Chinese word can sit under two keys, so repeats are skipped below
+                word = pinyin.getWord(pinyin.runWord(pinyinRun));
+                pinyinRun = nextPinyinRun();
+            }
+            if (!words.contains(word)) {
+                words.add(word);
+                added++;
+            }
+        }
+    }
+
+    private int nextPinyinRun() {
+        if (!pinyinExact) {
+            return pinyinTopK.next();
+        }
+        return pinyinPosition < pinyinEnd ? pinyinPosition++ : -1;
+    }
+
+    private double englishShare(int index) {
+        return english.getFrequency(index) / englishTotal;
+    }
+
+    private double pinyinShare(int position) {
+        return pinyin.getFrequency(pinyin.runWord(position)) / pinyinTotal;
+    }
+}
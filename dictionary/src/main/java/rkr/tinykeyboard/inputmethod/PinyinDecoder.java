@@ -0,0 +1,198 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sentence-level pinyin input. The input is cut into full pinyin keys of the dictionary,
+ * which are always whole syllables, giving a lattice whose edges are the words each key
+ * spells in full; a key that is also an abbreviation ("ce", for 从而) adds no words read
+ * from it. A beam search over that lattice keeps the {@link #BEAM_WIDTH} best paths at every
+ * position, scoring each word by its unigram log probability, so the cost per input is
+ * linear in its length. The last edge may be an unfinished syllable, matched as a prefix.
+ * Paths, beams and phrase buffers are kept between calls, so a decode allocates only the
+ * phrases it returns. Not thread safe; use one decoder per thread.
+ */
+class PinyinDecoder {
+    static final int BEAM_WIDTH = 8;
+    private static final int WORDS_PER_EDGE = 3;
+
+    private final PinyinDict dict;
+    private final RangeTopK walker;
+    private final double logTotalFrequency;
+
+    // Paths are stored in parallel arrays; a path is its last word plus a parent path.
+    private double[] pathScores = new double[256];
+    private int[] pathWords = new int[256];
+    private int[] pathParents = new int[256];
+    private int pathCount;
+    private int[][] beams = new int[0][];
+    private int[] beamSizes = new int[0];
+    // The distinct phrases of the final beam, spelled out, and the words of one path
+    private final StringBuilder[] phrases = new StringBuilder[BEAM_WIDTH];
+    private int[] pathWordStack = new int[16];
+
+    PinyinDecoder(PinyinDict dict) {
+        this.dict = dict;
+        walker = dict.prefixWalker();
+        // The same normalisation as MixedSearch, written by the compiler
+        logTotalFrequency = Math.log(dict.totalFrequency());
+    }
+
+    boolean isOn(PinyinDict dict) {
+        return this.dict == dict;
+    }
+
+    /**
+     * Appends to {@code words} those of the {@code limit} best distinct phrases spelling
+     * {@code input} that it does not already hold, best first.
+     */
+    void addPhrases(CharSequence input, int limit, List<String> words) {
+        int length = input.length();
+        resetBeams(length);
+        pathCount = 0;
+        addToBeam(0, newPath(-1, -1, 0));
+
+        for (int from = 0; from < length; from++) {
+            if (beamSizes[from] == 0) {
+                continue;
+            }
+            int start = 0;
+            int end = dict.keyCount();
+            for (int to = from; to < length && start < end; to++) {
+                int position = to - from;
+                int narrowedStart = dict.search(start, end, position, input.charAt(to), false);
+                end = dict.search(start, end, position, input.charAt(to), true);
+                start = narrowedStart;
+                if (start == end) {
+                    break;
+                }
+                if (to == length - 1) {
+                    // Last edge: any full pinyin key starting with the rest of the input
+                    walker.reset(dict.runStart(start), dict.runStart(end));
+                    extend(from, length, walker);
+                } else if (dict.keyLength(start) == position + 1 && dict.isFullPinyin(start)) {
+                    walker.reset(dict.runStart(start), dict.runStart(start + 1));
+                    extend(from, to + 1, walker);
+                }
+            }
+        }
+
+        int distinct = 0;
+        for (int i = 0; i < beamSizes[length] && distinct < limit; i++) {
+            StringBuilder phrase = spell(beams[length][i], distinct);
+            if (indexOf(phrase, phrases, distinct) != -1) {
+                continue;
+            }
+            distinct++;
+            if (indexOf(phrase, words) == -1) {
+                words.add(phrase.toString());
+            }
+        }
+    }
+
+    private void extend(int from, int to, RangeTopK words) {
+        for (int i = 0; i < WORDS_PER_EDGE; i++) {
+            int position = words.next();
+            if (position == -1) {
+                break;
+            }
+            int word = dict.runWord(position);
+            double score = Math.log(dict.getFrequency(word)) - logTotalFrequency;
+            for (int p = 0; p < beamSizes[from]; p++) {
+                int parent = beams[from][p];
+                double total = pathScores[parent] + score;
+                if (beamSizes[to] < BEAM_WIDTH || total > pathScores[beams[to][BEAM_WIDTH - 1]]) {
+                    addToBeam(to, newPath(parent, word, total));
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts a path into a beam kept sorted best first, dropping the worst when full.
+     */
+    private void addToBeam(int position, int path) {
+        int[] beam = beams[position];
+        int size = beamSizes[position];
+        int i = Math.min(size, BEAM_WIDTH - 1);
+        while (i > 0 && pathScores[beam[i - 1]] < pathScores[path]) {
+            beam[i] = beam[i - 1];
+            i--;
+        }
+        beam[i] = path;
+        beamSizes[position] = Math.min(size + 1, BEAM_WIDTH);
+    }
+
+    private int newPath(int parent, int word, double score) {
+        if (pathCount == pathScores.length) {
+            pathScores = Arrays.copyOf(pathScores, pathCount * 2);
+            pathWords = Arrays.copyOf(pathWords, pathCount * 2);
+            pathParents = Arrays.copyOf(pathParents, pathCount * 2);
+        }
+        pathScores[pathCount] = score;
+        pathWords[pathCount] = word;
+        pathParents[pathCount] = parent;
+        return pathCount++;
+    }
+
+    private void resetBeams(int length) {
+        if (beams.length < length + 1) {
+            beams = new int[length + 1][BEAM_WIDTH];
+            beamSizes = new int[length + 1];
+        }
+        Arrays.fill(beamSizes, 0);
+    }
+
+    /**
+     * Spells the words of {@code path} into the phrase buffer {@code slot}.
+     */
+    private StringBuilder spell(int path, int slot) {
+        int count = 0;
+        for (int p = path; pathWords[p] != -1; p = pathParents[p]) {
+            if (count == pathWordStack.length) {
+                pathWordStack = Arrays.copyOf(pathWordStack, count * 2);
+            }
+            pathWordStack[count++] = pathWords[p];
+        }
+        if (phrases[slot] == null) {
+            phrases[slot] = new StringBuilder();
+        }
+        StringBuilder phrase = phrases[slot];
+        phrase.setLength(0);
+        while (count > 0) {
+            dict.appendWord(pathWordStack[--count], phrase);
+        }
+        return phrase;
+    }
+
+    private static int indexOf(CharSequence phrase, CharSequence[] phrases, int count) {
+        for (int i = 0; i < count; i++) {
+            if (contentEquals(phrase, phrases[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(CharSequence phrase, List<String> words) {
+        for (int i = 0; i < words.size(); i++) {
+            if (words.get(i).contentEquals(phrase)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean contentEquals(CharSequence a, CharSequence b) {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < a.length(); i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,233 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pinyin dictionary backed by the pinyin_dict.bin file produced by the compilePinyinDict
+ * Gradle task. The file is memory-mapped, so the OS pages it in on demand and none of
+ * it lives on the Java heap; queries read keys, runs and words straight from the buffer.
+ */
+public class PinyinDict implements SearchSession.Keys {
+    static final int MAGIC = 0x484c5059; // "HLPY"
+    static final int VERSION = 5;
+    private static final int HEADER_SIZE = 7 * 4 + 8;
+    private static final int FULL_PINYIN_FLAG = 0x80000000;
+
+    private final ByteBuffer data;
+    private final int keyCount;
+    private final int wordCount;
+    private final int keyOffsetsStart;
+    private final int runStartsStart;
+    private final int runsStart;
+    private final int wordOffsetsStart;
+    private final int frequenciesStart;
+    private final int runLength;
+    private final int treeStart;
+    private final int keyPoolStart;
+    private final int wordPoolStart;
+    private final double totalFrequency;
+
+    private PinyinDict(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported pinyin dictionary format");
+        }
+        keyCount = data.getInt(8);
+        wordCount = data.getInt(12);
+        runLength = data.getInt(16);
+        int keyPoolSize = data.getInt(20);
+        totalFrequency = data.getDouble(28);
+
+        keyOffsetsStart = HEADER_SIZE;
+        runStartsStart = keyOffsetsStart + (keyCount + 1) * 4;
+        runsStart = runStartsStart + (keyCount + 1) * 4;
+        wordOffsetsStart = runsStart + runLength * 4;
+        frequenciesStart = wordOffsetsStart + (wordCount + 1) * 4;
+        treeStart = frequenciesStart + wordCount * 8;
+        keyPoolStart = treeStart + 2 * runLength * 4;
+        wordPoolStart = keyPoolStart + keyPoolSize;
+    }
+
+    public static PinyinDict map(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            return new PinyinDict(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    @Override
+    public int keyCount() {
+        return keyCount;
+    }
+
+    /**
+     * Up to {@code limit} distinct words for {@code input}, highest frequency first.
+     */
+    public List<String> getCandidates(String input, int limit) {
+        SearchSession session = new SearchSession(this);
+        if (input != null) {
+            session.update(input);
+        }
+        return getCandidates(session, limit);
+    }
+
+    /**
+     * Same as {@link #getCandidates(String, int)} for the text of {@code session}, which
+     * must have been created on this dictionary.
+     */
+    public List<String> getCandidates(SearchSession session, int limit) {
+        List<String> candidates = new ArrayList<>(limit);
+        addCandidates(session, prefixWalker(), limit, candidates);
+        return candidates;
+    }
+
+    /**
+     * Appends to {@code candidates} up to {@code limit} words for the text of
+     * {@code session} that it does not already hold, highest frequency first.
+     * {@code prefixWalker} comes from {@link #prefixWalker()} and is reused across calls.
+     */
+    void addCandidates(SearchSession session, RangeTopK prefixWalker, int limit, List<String> candidates) {
+        if (session.length() == 0) {
+            return;
+        }
+        int added = 0;
+        if (hasExactKey(session)) {
+            // Full pinyin match or abbr match: the run is already sorted and distinct
+            int end = runStart(session.start() + 1);
+            for (int position = runStart(session.start()); added < limit && position < end; position++) {
+                String word = getWord(runWord(position));
+                if (!candidates.contains(word)) {
+                    candidates.add(word);
+                    added++;
+                }
+            }
+        } else {
+            // Pinyin prefix match: merge the runs of every key with the prefix, best first.
+            // The same word can sit under two keys (行 is xing and hang), so skip repeats.
+            prefixWalker.reset(runStart(session.start()), runStart(session.end()));
+            int position;
+            while (added < limit && (position = prefixWalker.next()) != -1) {
+                String word = getWord(runWord(position));
+                if (!candidates.contains(word)) {
+                    candidates.add(word);
+                    added++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the text of {@code session} is itself a key, full pinyin or abbreviation.
+     */
+    boolean hasExactKey(SearchSession session) {
+        return session.start() < session.end() && keyLength(session.start()) == session.length();
+    }
+
+    /**
+     * A walker over run positions by frequency that only yields the words a key spells in
+     * full, skipping those it abbreviates. The runs of all keys starting with a prefix are
+     * contiguous, so one walk covers the whole prefix; a walk over one key's run gives the
+     * words of that syllable sequence.
+     */
+    RangeTopK prefixWalker() {
+        return new RangeTopK(data, treeStart, runLength, this::compareByFrequency);
+    }
+
+    int runStart(int key) {
+        return data.getInt(runStartsStart + key * 4) & ~FULL_PINYIN_FLAG;
+    }
+
+    boolean isFullPinyin(int key) {
+        return (data.getInt(runStartsStart + key * 4) & FULL_PINYIN_FLAG) != 0;
+    }
+
+    /**
+     * The word at a position of the runs array.
+     */
+    int runWord(int position) {
+        return data.getInt(runsStart + position * 4);
+    }
+
+    /**
+     * Orders run positions by word frequency, keeping dictionary order for ties.
+     */
+    private int compareByFrequency(int a, int b) {
+        int result = Double.compare(getFrequency(runWord(b)), getFrequency(runWord(a)));
+        return result != 0 ? result : Integer.compare(a, b);
+    }
+
+    double getFrequency(int word) {
+        return data.getDouble(frequenciesStart + word * 8);
+    }
+
+    /**
+     * Sum of the frequencies of all words, for turning a frequency into a share of use.
+     */
+    double totalFrequency() {
+        return totalFrequency;
+    }
+
+    String getWord(int word) {
+        int start = data.getInt(wordOffsetsStart + word * 4);
+        byte[] bytes = new byte[data.getInt(wordOffsetsStart + (word + 1) * 4) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(wordPoolStart + start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends {@code word} to {@code to}, decoding its UTF-8 in place rather than through a
+     * String, for callers that join words and must not allocate per word.
+     */
+    void appendWord(int word, StringBuilder to) {
+        int position = wordPoolStart + data.getInt(wordOffsetsStart + word * 4);
+        int end = wordPoolStart + data.getInt(wordOffsetsStart + (word + 1) * 4);
+        while (position < end) {
+            int lead = data.get(position++) & 0xff;
+            int codePoint;
+            if (lead < 0x80) {
+                codePoint = lead;
+            } else if (lead < 0xe0) {
+                codePoint = lead & 0x1f;
+            } else if (lead < 0xf0) {
+                codePoint = lead & 0x0f;
+            } else {
+                codePoint = lead & 0x07;
+            }
+            // The continuation bytes, 10xxxxxx each; the compiler wrote well-formed UTF-8
+            for (int more = lead < 0x80 ? 0 : lead < 0xe0 ? 1 : lead < 0xf0 ? 2 : 3; more > 0; more--) {
+                codePoint = (codePoint << 6) | (data.get(position++) & 0x3f);
+            }
+            to.appendCodePoint(codePoint);
+        }
+    }
+
+    @Override
+    public int search(int start, int end, int position, char ch, boolean upper) {
+        while (start < end) {
+            int middle = (start + end) >>> 1;
+            int c = keyLength(middle) > position ? data.get(keyPoolStart + keyOffset(middle) + position) & 0xff : -1;
+            if (c < ch || (upper && c == ch)) {
+                start = middle + 1;
+            } else {
+                end = middle;
+            }
+        }
+        return start;
+    }
+
+    private int keyOffset(int key) {
+        return data.getInt(keyOffsetsStart + key * 4);
+    }
+
+    int keyLength(int key) {
+        return keyOffset(key + 1) - keyOffset(key);
+    }
+}
@@ -0,0 +1,107 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * English words for a full pinyin, backed by the cedict.bin file produced by the
+ * compileCedict Gradle task. The file is memory-mapped; a lookup binary-searches the
+ * sorted keys and decodes only the glosses of the key it finds.
+ */
+public class PinyinEnglishDict {
+    static final int MAGIC = 0x484c4345; // "HLCE"
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 6 * 4;
+
+    private final ByteBuffer data;
+    private final int keyCount;
+    private final int keyOffsetsStart;
+    private final int glossStartsStart;
+    private final int glossOffsetsStart;
+    private final int keyPoolStart;
+    private final int glossPoolStart;
+
+    private PinyinEnglishDict(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported pinyin to English dictionary format");
+        }
+        keyCount = data.getInt(8);
+        int glossCount = data.getInt(12);
+        int keyPoolSize = data.getInt(16);
+
+        keyOffsetsStart = HEADER_SIZE;
+        glossStartsStart = keyOffsetsStart + (keyCount + 1) * 4;
+        glossOffsetsStart = glossStartsStart + (keyCount + 1) * 4;
+        keyPoolStart = glossOffsetsStart + (glossCount + 1) * 4;
+        glossPoolStart = keyPoolStart + keyPoolSize;
+    }
+
+    public static PinyinEnglishDict map(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            return new PinyinEnglishDict(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int size() {
+        return keyCount;
+    }
+
+    /**
+     * The English glosses of {@code pinyin}, in dictionary order; empty if it is unknown.
+     */
+    public List<String> get(CharSequence pinyin) {
+        int key = indexOf(pinyin);
+        if (key == -1) {
+            return new ArrayList<>();
+        }
+        int start = data.getInt(glossStartsStart + key * 4);
+        int end = data.getInt(glossStartsStart + (key + 1) * 4);
+        List<String> glosses = new ArrayList<>(end - start);
+        for (int gloss = start; gloss < end; gloss++) {
+            int offset = data.getInt(glossOffsetsStart + gloss * 4);
+            byte[] bytes = new byte[data.getInt(glossOffsetsStart + (gloss + 1) * 4) - offset];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = data.get(glossPoolStart + offset + i);
+            }
+            glosses.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return glosses;
+    }
+
+    private int indexOf(CharSequence pinyin) {
+        int low = 0;
+        int high = keyCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int result = compare(middle, pinyin);
+            if (result < 0) {
+                low = middle + 1;
+            } else if (result > 0) {
+                high = middle;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int key, CharSequence pinyin) {
+        int start = data.getInt(keyOffsetsStart + key * 4);
+        int length = data.getInt(keyOffsetsStart + (key + 1) * 4) - start;
+        int common = Math.min(length, pinyin.length());
+        for (int i = 0; i < common; i++) {
+            int difference = (data.get(keyPoolStart + start + i) & 0xff) - pinyin.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - pinyin.length();
+    }
+}
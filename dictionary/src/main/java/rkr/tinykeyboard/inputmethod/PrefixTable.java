@@ -0,0 +1,100 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The candidates of every one and two letter prefix, precomputed at build time by the
+ * compilePrefixTable Gradle task into prefix_table.bin. They are exactly what
+ * {@link EnglishDict#addWordsInRange} and {@link PinyinDict#addCandidates} return, so the
+ * shortest and widest queries skip the dictionaries and read one small contiguous list.
+ */
+public class PrefixTable {
+    static final int MAGIC = 0x484c5054; // "HLPT"
+    static final int VERSION = 1;
+    private static final int SLOT_COUNT = 26 + 26 * 26;
+
+    private final ByteBuffer data;
+    private final int wordsPerPrefix;
+    private final int englishStart;
+    private final int pinyinStart;
+
+    private PrefixTable(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported prefix table format");
+        }
+        wordsPerPrefix = data.getInt(8);
+        englishStart = data.getInt(12);
+        pinyinStart = data.getInt(16);
+    }
+
+    public static PrefixTable map(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            return new PrefixTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Appends to {@code words} up to {@code limit} words for {@code prefix} that it does
+     * not already hold, as the English or pinyin dictionary would. Returns false, adding
+     * nothing, when the table cannot tell: the prefix is not one or two letters a to z,
+     * or so many of its words were already held that the stored list runs out.
+     */
+    boolean addWords(InputMode mode, CharSequence prefix, int limit, List<String> words) {
+        int slot = slot(prefix);
+        if (slot == -1 || mode == InputMode.Mixed) {
+            return false;
+        }
+        int section = mode == InputMode.English ? englishStart : pinyinStart;
+        int first = data.getInt(section + 4 + slot * 4);
+        int end = data.getInt(section + 4 + (slot + 1) * 4);
+        int before = words.size();
+        int added = 0;
+        for (int i = first; added < limit && i < end; i++) {
+            String word = getWord(section, i);
+            if (!words.contains(word)) {
+                words.add(word);
+                added++;
+            }
+        }
+        if (added < limit && end - first == wordsPerPrefix) {
+            // The stored list may have been cut short; only the dictionary knows what follows
+            words.subList(before, words.size()).clear();
+            return false;
+        }
+        return true;
+    }
+
+    private static int slot(CharSequence prefix) {
+        if (prefix.length() == 0 || prefix.length() > 2) {
+            return -1;
+        }
+        int first = prefix.charAt(0) - 'a';
+        if (first < 0 || first >= 26) {
+            return -1;
+        }
+        if (prefix.length() == 1) {
+            return first;
+        }
+        int second = prefix.charAt(1) - 'a';
+        return second < 0 || second >= 26 ? -1 : 26 + 26 * first + second;
+    }
+
+    private String getWord(int section, int word) {
+        int wordCount = data.getInt(section);
+        int offsetsStart = section + 4 + (SLOT_COUNT + 1) * 4;
+        int poolStart = offsetsStart + (wordCount + 1) * 4;
+        int start = data.getInt(offsetsStart + word * 4);
+        byte[] bytes = new byte[data.getInt(offsetsStart + (word + 1) * 4) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(poolStart + start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,105 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Best-first walk over an argmax segment tree prebuilt into a dictionary file (see
+ * RangeMaxTree in buildSrc). Leaves in a range come out best first, and producing the
+ * first K of them costs O(K log n) however many leaves the range holds.
+ */
+class RangeTopK {
+    interface Ranking {
+        /** Negative when leaf {@code a} ranks before leaf {@code b}. */
+        int compare(int a, int b);
+    }
+
+    private final ByteBuffer data;
+    private final int treeStart;
+    private final int leafCount;
+    private final Ranking ranking;
+    private int[] heap = new int[32];
+    private int heapSize;
+
+    RangeTopK(ByteBuffer data, int treeStart, int leafCount, Ranking ranking) {
+        this.data = data;
+        this.treeStart = treeStart;
+        this.leafCount = leafCount;
+        this.ranking = ranking;
+    }
+
+    /**
+     * Starts a new walk over the leaves in {@code [start, end)}.
+     */
+    void reset(int start, int end) {
+        heapSize = 0;
+        for (int low = start + leafCount, high = end + leafCount; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) == 1) {
+                push(low++);
+            }
+            if ((high & 1) == 1) {
+                push(--high);
+            }
+        }
+    }
+
+    /**
+     * Returns the next best leaf, or -1 when the range is exhausted.
+     */
+    int next() {
+        while (heapSize > 0) {
+            int node = pop();
+            if (node >= leafCount) {
+                return node - leafCount;
+            }
+            push(2 * node);
+            push(2 * node + 1);
+        }
+        return -1;
+    }
+
+    private int best(int node) {
+        return data.getInt(treeStart + node * 4);
+    }
+
+    private void push(int node) {
+        if (best(node) == -1) {
+            return;
+        }
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (ranking.compare(best(node), best(heap[parent])) >= 0) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = node;
+    }
+
+    private int pop() {
+        int top = heap[0];
+        int last = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && ranking.compare(best(heap[child + 1]), best(heap[child])) < 0) {
+                child++;
+            }
+            if (ranking.compare(best(heap[child]), best(last)) >= 0) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+}
@@ -0,0 +1,83 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.util.Arrays;
+
+/**
+ * Incremental prefix search over a dictionary with sorted keys. The session keeps the
+ * key range matching every prefix of the current text, so appending a character only
+ * narrows the previous range, and deleting one pops back to the saved range in O(1).
+ * Not thread safe; each session belongs to the thread that queries it.
+ */
+class SearchSession {
+    interface Keys {
+        int keyCount();
+
+        /**
+         * Binary search in {@code [start, end)}, where all keys share their first
+         * {@code position} characters, for the first key whose character at
+         * {@code position} is not below {@code ch} (or above it, when {@code upper}).
+         * Keys of length {@code position} sort before every character.
+         */
+        int search(int start, int end, int position, char ch, boolean upper);
+    }
+
+    private final Keys keys;
+    private final StringBuilder text = new StringBuilder();
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+
+    SearchSession(Keys keys) {
+        this.keys = keys;
+        ends[0] = keys.keyCount();
+    }
+
+    /**
+     * Moves the session to {@code newText}, keeping the ranges of the common prefix.
+     */
+    void update(CharSequence newText) {
+        int common = 0;
+        int limit = Math.min(text.length(), newText.length());
+        while (common < limit && text.charAt(common) == newText.charAt(common)) {
+            common++;
+        }
+        text.setLength(common);
+        for (int i = common; i < newText.length(); i++) {
+            append(newText.charAt(i));
+        }
+    }
+
+    void append(char ch) {
+        int depth = text.length();
+        if (depth + 1 == starts.length) {
+            starts = Arrays.copyOf(starts, starts.length * 2);
+            ends = Arrays.copyOf(ends, ends.length * 2);
+        }
+        int start = starts[depth];
+        int end = ends[depth];
+        starts[depth + 1] = keys.search(start, end, depth, ch, false);
+        ends[depth + 1] = keys.search(start, end, depth, ch, true);
+        text.append(ch);
+    }
+
+    boolean isOn(Keys keys) {
+        return this.keys == keys;
+    }
+
+    int length() {
+        return text.length();
+    }
+
+    /**
+     * First key starting with the current text.
+     */
+    int start() {
+        return starts[text.length()];
+    }
+
+    /**
+     * End (exclusive) of the keys starting with the current text.
+     */
+    int end() {
+        return ends[text.length()];
+    }
+}
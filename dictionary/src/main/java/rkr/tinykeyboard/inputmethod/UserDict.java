@@ -0,0 +1,312 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Words the user has committed, keyed by what was typed to get them. Scores decay with a
+ * fixed half-life so old habits fade. {@link #record} only touches memory; the events are
+ * appended to a log file in batches on a background thread, and the log is rewritten
+ * from the live entries once it grows too long.
+ *
+ * <p>Log lines are {@code time \t weight \t kind \t reading \t word}, where the kind is the
+ * input mode, or "Next" for a word and the word committed before it. Replaying them in
+ * any order gives the same scores, because each event just adds its decayed weight.
+ */
+class UserDict {
+    private static final long HALF_LIFE_MS = TimeUnit.DAYS.toMillis(30);
+    private static final double MIN_SCORE = 0.05;
+    private static final long FLUSH_DELAY_MS = 5000;
+    private static final int COMPACT_MIN_LINES = 2000;
+    // Kind of the entries that pair a committed word with the one before it
+    private static final String FOLLOWERS = "Next";
+
+    private static final class Entry {
+        final double score;
+        final long lastUsed;
+
+        Entry(double score, long lastUsed) {
+            this.score = score;
+            this.lastUsed = lastUsed;
+        }
+
+        Entry add(double weight, long time) {
+            if (time >= lastUsed) {
+                return new Entry(score * decay(time - lastUsed) + weight, time);
+            }
+            return new Entry(score + weight * decay(lastUsed - time), lastUsed);
+        }
+
+        double scoreAt(long time) {
+            return score * decay(time - lastUsed);
+        }
+    }
+
+    private final File logFile;
+    // Milliseconds, for recording and decaying scores
+    private final LongSupplier clock;
+    // Keys are "mode \t reading \t word", so a prefix of the reading is a key range.
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    private final ConcurrentLinkedQueue<String> pendingLines = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // Bumped on every entry update, so cached lookups can tell they are stale
+    private final AtomicInteger changes = new AtomicInteger();
+    private final ScheduledThreadPoolExecutor writer = new ScheduledThreadPoolExecutor(1);
+    // Keeps an entry update and its log line together, so compaction sees both or neither.
+    private final Object recordLock = new Object();
+    private int logLines;
+
+    UserDict(File logFile) {
+        this(logFile, System::currentTimeMillis);
+    }
+
+    /**
+     * A dictionary whose scores age by {@code clock}; trace replays pass a fake one so
+     * learned words rank the same on every run.
+     */
+    UserDict(File logFile, LongSupplier clock) {
+        this.logFile = logFile;
+        this.clock = clock;
+        // close() flushes at once; a delayed flush left behind would only keep the thread alive
+        writer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Replays the log on the writer thread; records made meanwhile are kept.
+     */
+    void load() {
+        writer.execute(() -> {
+            if (!logFile.exists()) {
+                return;
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", 3);
+                    if (fields.length == 3) {
+                        apply(fields[2], Double.parseDouble(fields[1]), Long.parseLong(fields[0]));
+                        logLines++;
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Records that {@code word} was committed after typing {@code reading}. Safe to call
+     * on the main thread: no disk I/O happens here.
+     */
+    void record(InputMode mode, String reading, String word) {
+        record(mode.name(), reading, word);
+    }
+
+    /**
+     * The mode to record {@code word} under when committed in {@code mode}. Mixed input
+     * learns under the language of the word, so both single-language modes offer it.
+     */
+    static InputMode learnedMode(InputMode mode, String word) {
+        if (mode != InputMode.Mixed) {
+            return mode;
+        }
+        return word.isEmpty() || word.charAt(0) < 0x80 ? InputMode.English : InputMode.Pinyin;
+    }
+
+    /**
+     * Records that {@code word} was committed right after {@code previous}.
+     */
+    void recordFollower(String previous, String word) {
+        record(FOLLOWERS, previous, word);
+    }
+
+    /**
+     * Up to {@code limit} learned words whose reading starts with {@code prefix}, best first.
+     */
+    List<String> getWords(InputMode mode, String prefix, int limit) {
+        return getWords(mode.name() + '\t' + prefix, limit);
+    }
+
+    /**
+     * Up to {@code limit} words the user has committed right after {@code previous}, best first.
+     */
+    List<String> getFollowers(String previous, int limit) {
+        return getWords(FOLLOWERS + '\t' + previous + '\t', limit);
+    }
+
+    /**
+     * Changes whenever a learned word is added or its score changes, replay included.
+     */
+    int changeCount() {
+        return changes.get();
+    }
+
+    /**
+     * Forgets every learned word and deletes the log. Runs on the writer thread, after a
+     * pending load, so nothing recorded before the call survives it.
+     */
+    void clear() {
+        writer.execute(() -> {
+            synchronized (recordLock) {
+                entries.clear();
+                pendingLines.clear();
+            }
+            changes.incrementAndGet();
+            logLines = 0;
+            new File(logFile.getPath() + ".tmp").delete();
+            if (logFile.exists() && !logFile.delete()) {
+                // Emptied instead, so the words are gone either way
+                try {
+                    new FileOutputStream(logFile).close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Flushes pending records and stops the writer thread.
+     */
+    void close() {
+        writer.execute(this::flush);
+        writer.shutdown();
+    }
+
+    private void record(String kind, String reading, String word) {
+        if (reading.isEmpty() || word.isEmpty() || reading.indexOf('\t') >= 0 || word.indexOf('\t') >= 0 || word.indexOf('\n') >= 0) {
+            return;
+        }
+        long now = clock.getAsLong();
+        String key = kind + '\t' + reading + '\t' + word;
+        synchronized (recordLock) {
+            apply(key, 1, now);
+            pendingLines.add(now + "\t1\t" + key);
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            writer.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private List<String> getWords(String from, int limit) {
+        ConcurrentNavigableMap<String, Entry> range = entries.subMap(from, true, from + Character.MAX_VALUE, false);
+        if (range.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        long now = clock.getAsLong();
+        List<Map.Entry<String, Entry>> matches = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : range.entrySet()) {
+            if (entry.getValue().scoreAt(now) >= MIN_SCORE) {
+                matches.add(entry);
+            }
+        }
+        matches.sort((a, b) -> Double.compare(b.getValue().scoreAt(now), a.getValue().scoreAt(now)));
+
+        List<String> words = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : matches) {
+            String word = entry.getKey().substring(entry.getKey().lastIndexOf('\t') + 1);
+            if (!words.contains(word)) {
+                words.add(word);
+            }
+            if (words.size() == limit) {
+                break;
+            }
+        }
+        return words;
+    }
+
+    private void apply(String key, double weight, long time) {
+        entries.compute(key, (k, entry) -> entry == null ? new Entry(weight, time) : entry.add(weight, time));
+        changes.incrementAndGet();
+    }
+
+    // Runs on the writer thread.
+    private void flush() {
+        flushScheduled.set(false);
+        if (pendingLines.isEmpty()) {
+            return;
+        }
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile, true), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = pendingLines.poll()) != null) {
+                out.write(line);
+                out.write('\n');
+                logLines++;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (logLines > Math.max(COMPACT_MIN_LINES, 2 * entries.size())) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the log with one line per live entry and drops entries that have decayed away.
+     * Until the new log has replaced the old one, records made since the last flush stay
+     * pending, so a failed rewrite leaves them for the next flush to append.
+     */
+    private void compact() {
+        long now = clock.getAsLong();
+        List<String> lines = new ArrayList<>();
+        int covered;
+        synchronized (recordLock) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry value = entry.getValue();
+                if (value.scoreAt(now) < MIN_SCORE) {
+                    entries.remove(entry.getKey(), value);
+                } else {
+                    lines.add(value.lastUsed + "\t" + value.score + "\t" + entry.getKey());
+                }
+            }
+            // Records made since the last flush are part of the snapshot already.
+            covered = pendingLines.size();
+        }
+
+        File temp = new File(logFile.getPath() + ".tmp");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(logFile)) {
+            temp.delete();
+            return;
+        }
+        logLines = lines.size();
+        // Only the writer thread polls, so these are the lines the snapshot covered
+        for (int i = 0; i < covered; i++) {
+            pendingLines.poll();
+        }
+    }
+
+    private static double decay(long elapsed) {
+        return Math.pow(0.5, (double) elapsed / HALF_LIFE_MS);
+    }
+}
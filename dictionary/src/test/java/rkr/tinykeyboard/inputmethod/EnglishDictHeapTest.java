@@ -0,0 +1,180 @@
+package rkr.tinykeyboard.inputmethod;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.apache.commons.collections4.trie.PatriciaTrie;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the heap the English dictionary keeps alive with that of the PatriciaTrie it
+ * replaced. The trie holds a node, a String and a boxed Long per word; the mapped
+ * dictionary holds its buffer and a few ints, the words staying in the page cache.
+ * Sizes are worked out from the object graphs, not read from the collector, so they are
+ * the same on every run and under any GC.
+ */
+public class EnglishDictHeapTest {
+    // The trie comes to some 25 MB; either bound failing means a real change
+    private static final long MIN_TRIE_BYTES = 4 << 20;
+    private static final long MAX_DICT_BYTES = 64 << 10;
+
+    // A 64-bit JVM with compressed pointers
+    private static final int HEADER_BYTES = 12;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    // A ByteBuffer's own fields; its bytes are counted apart, when they are on the heap
+    private static final int BYTE_BUFFER_BYTES = 64;
+
+    @Test
+    public void mappedDictionaryKeepsTheWordsOffHeap() throws IOException {
+        EnglishDict dict = EnglishDict.map(TestDictionaries.english());
+        long dictBytes = retainedBytes(dict);
+        assertTrue("EnglishDict retains " + dictBytes + " bytes", dictBytes < MAX_DICT_BYTES);
+    }
+
+    @Test
+    public void trieKeepsEveryWordOnHeap() throws IOException {
+        long trieBytes = retainedBytes(loadTrie());
+        assertTrue("PatriciaTrie retains only " + trieBytes + " bytes", trieBytes > MIN_TRIE_BYTES);
+    }
+
+    /**
+     * The trie as the keyboard built it: parsed with Gson, then copied entry by entry.
+     */
+    private static PatriciaTrie<Long> loadTrie() throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(TestDictionaries.ENGLISH_SOURCE), StandardCharsets.UTF_8)) {
+            Map<String, Long> map = new Gson().fromJson(reader, new TypeToken<Map<String, Long>>() {
+            }.getType());
+            PatriciaTrie<Long> trie = new PatriciaTrie<>();
+            for (Map.Entry<String, Long> entry : map.entrySet()) {
+                trie.put(entry.getKey(), entry.getValue());
+            }
+            return trie;
+        }
+    }
+
+    /**
+     * The heap kept alive by {@code root}, laid out as the JVM does. Classes of the JDK
+     * are not opened up: a String is sized from its characters, a boxed number as one
+     * field, a ByteBuffer by its backing array if it has one, and anything else as a bare
+     * object.
+     */
+    private static long retainedBytes(Object root) {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        long bytes = 0;
+        while (!pending.isEmpty()) {
+            Object object = pending.pop();
+            if (!seen.add(object)) {
+                continue;
+            }
+            Class<?> type = object.getClass();
+            if (type.isArray()) {
+                Class<?> component = type.getComponentType();
+                int length = Array.getLength(object);
+                bytes += align(ARRAY_HEADER_BYTES + (long) length * sizeOf(component));
+                if (!component.isPrimitive()) {
+                    for (int i = 0; i < length; i++) {
+                        push(pending, Array.get(object, i));
+                    }
+                }
+            } else if (object instanceof String) {
+                bytes += align(HEADER_BYTES + REFERENCE_BYTES + 8) + align(ARRAY_HEADER_BYTES + stringBytes((String) object));
+            } else if (object instanceof Number && type.getName().startsWith("java.lang.")) {
+                bytes += align(HEADER_BYTES + 8);
+            } else if (object instanceof ByteBuffer) {
+                ByteBuffer buffer = (ByteBuffer) object;
+                bytes += BYTE_BUFFER_BYTES + (buffer.hasArray() ? align(ARRAY_HEADER_BYTES + buffer.array().length) : 0);
+            } else if (isJdk(type)) {
+                bytes += align(HEADER_BYTES);
+            } else {
+                bytes += align(HEADER_BYTES + fieldBytes(object, pending));
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * The instance fields of {@code object}, pushing what they refer to. Those inherited
+     * from the JDK, such as AbstractMap's cached views, are left out.
+     */
+    private static long fieldBytes(Object object, Deque<Object> pending) {
+        long bytes = 0;
+        for (Class<?> type = object.getClass(); type != null && !isJdk(type); type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                bytes += sizeOf(field.getType());
+                if (!field.getType().isPrimitive()) {
+                    field.setAccessible(true);
+                    try {
+                        push(pending, field.get(object));
+                    } catch (IllegalAccessException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static boolean isJdk(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("jdk.") || name.startsWith("sun.");
+    }
+
+    private static void push(Deque<Object> pending, Object value) {
+        if (value != null) {
+            pending.push(value);
+        }
+    }
+
+    /**
+     * A String's bytes: one a character when all fit in Latin-1, else two.
+     */
+    private static int stringBytes(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) > 0xff) {
+                return string.length() * 2;
+            }
+        }
+        return string.length();
+    }
+
+    private static int sizeOf(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE_BYTES;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
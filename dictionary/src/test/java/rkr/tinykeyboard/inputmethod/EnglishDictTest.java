@@ -0,0 +1,116 @@
+package rkr.tinykeyboard.inputmethod;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.apache.commons.collections4.trie.PatriciaTrie;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Checks the compiled English dictionary against the PatriciaTrie the keyboard used to
+ * build from the JSON at startup: the same words with the same frequencies, and the same
+ * words, in the same order, for a prefix.
+ */
+public class EnglishDictTest {
+    private static final int LIMIT = CandidateGenerator.MAX_CANDIDATES;
+
+    private static PatriciaTrie<Long> trie;
+    private static EnglishDict dict;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(TestDictionaries.ENGLISH_SOURCE), StandardCharsets.UTF_8)) {
+            Map<String, Long> map = new Gson().fromJson(reader, new TypeToken<Map<String, Long>>() {
+            }.getType());
+            trie = new PatriciaTrie<>(map);
+        }
+        dict = EnglishDict.map(TestDictionaries.english());
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        // Leave the heap to the tests that follow
+        trie = null;
+        dict = null;
+    }
+
+    /**
+     * What the keyboard listed for a prefix before: the trie's prefix map sorted by
+     * frequency, highest first, with ties left in key order.
+     */
+    private static List<String> trieWordsWithPrefix(String prefix, int limit) {
+        List<Map.Entry<String, Long>> matchingWords = new ArrayList<>(trie.prefixMap(prefix).entrySet());
+        matchingWords.sort(Map.Entry.comparingByValue(Collections.reverseOrder()));
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, matchingWords.size()); i++) {
+            words.add(matchingWords.get(i).getKey());
+        }
+        return words;
+    }
+
+    @Test
+    public void exactLookupsMatchTrie() {
+        assertEquals(trie.size(), dict.size());
+        for (Map.Entry<String, Long> entry : trie.entrySet()) {
+            int index = dict.indexOf(entry.getKey());
+            assertNotEquals(entry.getKey(), -1, index);
+            assertEquals(entry.getKey(), (long) entry.getValue(), dict.getFrequency(index));
+        }
+    }
+
+    @Test
+    public void missingWordsAreNotFound() {
+        for (String word : new String[]{"", "qqqq", "zzzzzzzzzz", "hellox"}) {
+            if (!trie.containsKey(word)) {
+                assertEquals(word, -1, dict.indexOf(word));
+            }
+        }
+    }
+
+    @Test
+    public void shortPrefixesMatchTrie() {
+        for (char first = 'a'; first <= 'z'; first++) {
+            String prefix = String.valueOf(first);
+            assertEquals(prefix, trieWordsWithPrefix(prefix, LIMIT), dict.getWordsWithPrefix(prefix, LIMIT));
+            for (char second = 'a'; second <= 'z'; second++) {
+                String longer = prefix + second;
+                assertEquals(longer, trieWordsWithPrefix(longer, LIMIT), dict.getWordsWithPrefix(longer, LIMIT));
+            }
+        }
+    }
+
+    @Test
+    public void longerPrefixesMatchTrie() {
+        // Every 97th word cut to three to six letters: a spread of common and rare prefixes
+        int i = 0;
+        for (String word : trie.keySet()) {
+            if (i++ % 97 != 0) {
+                continue;
+            }
+            String prefix = word.substring(0, Math.min(word.length(), 3 + i % 4));
+            assertEquals(prefix, trieWordsWithPrefix(prefix, LIMIT), dict.getWordsWithPrefix(prefix, LIMIT));
+        }
+    }
+
+    @Test
+    public void prefixOrderMatchesTrieBeyondTheCandidateLimit() {
+        for (String prefix : new String[]{"a", "th", "pre", "inter"}) {
+            assertEquals(prefix, trieWordsWithPrefix(prefix, 500), dict.getWordsWithPrefix(prefix, 500));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package rkr.tinykeyboard.inputmethod;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Holds the candidate query of a keystroke to the garbage it cannot avoid: the list it
+ * returns, the words in it and the user dictionary's lookups. Search state, the phrase
+ * decoder's included, is pooled, so anything more fails here. Words are typed a letter at
+ * a time through one CandidateGenerator, as SoftKeyboard's worker does, with the cache
+ * defeated so every keystroke searches. Counted with the JVM's per-thread allocation
+ * counter once the JIT has settled.
+ */
+public class KeystrokeAllocationTest {
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final int WARMUP_ROUNDS = 300;
+
+    // A word as returned: its String and array, plus the scratch of decoding it from the file
+    private static final long BYTES_PER_CANDIDATE = 144;
+    // A user dictionary lookup builds its range keys from the prefix; mixed input makes two
+    private static final long BYTES_PER_LEARNED_LOOKUP = 640;
+    // The list itself and its cache entry
+    private static final long BYTES_PER_KEYSTROKE = 256;
+
+    private static final String[] ENGLISH_WORDS = {"the", "keyboard", "hello", "world", "question", "xylophone", "qwertx", "thier"};
+    private static final String[] PINYIN_WORDS = {"ni", "zhongguo", "woshixuesheng", "jintiantianqihenhao", "xiexie", "cezhi"};
+
+    private static File userDictFile;
+    private static UserDict userDict;
+    private static Dictionaries[] snapshots;
+    private static KeyProximity proximity;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        Dictionaries dictionaries = Dictionaries.EMPTY
+                .withEnglish(EnglishDict.map(TestDictionaries.english()))
+                .withPinyin(PinyinDict.map(TestDictionaries.pinyin()))
+                .withPrefixes(PrefixTable.map(TestDictionaries.prefixTable()));
+        // The generator keeps its cache per snapshot; alternating two makes every query miss
+        snapshots = new Dictionaries[]{dictionaries, dictionaries.withTier(Dictionaries.Tier.FULL)};
+        proximity = TestDictionaries.qwerty();
+        userDictFile = File.createTempFile("user_dict", ".log");
+        userDict = new UserDict(userDictFile);
+        userDict.load();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        userDict.close();
+        userDictFile.deleteOnExit();
+    }
+
+    @Test
+    public void englishKeystrokesAllocateOnlyTheirCandidates() {
+        assertWithinBudget(InputMode.English, ENGLISH_WORDS);
+    }
+
+    @Test
+    public void pinyinKeystrokesAllocateOnlyTheirCandidates() {
+        assertWithinBudget(InputMode.Pinyin, PINYIN_WORDS);
+    }
+
+    @Test
+    public void mixedKeystrokesAllocateOnlyTheirCandidates() {
+        assertWithinBudget(InputMode.Mixed, ENGLISH_WORDS);
+        assertWithinBudget(InputMode.Mixed, PINYIN_WORDS);
+    }
+
+    private static void assertWithinBudget(InputMode mode, String[] words) {
+        CandidateGenerator generator = new CandidateGenerator(userDict);
+        String[] prefixes = prefixes(words);
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (int i = 0; i < prefixes.length; i++) {
+                generator.query(prefixes[i], mode, snapshots[i % 2], proximity);
+            }
+        }
+        long overhead = counterOverhead();
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < prefixes.length; i++) {
+            long before = THREADS.getThreadAllocatedBytes(thread);
+            List<String> candidates = generator.query(prefixes[i], mode, snapshots[i % 2], proximity);
+            long bytes = THREADS.getThreadAllocatedBytes(thread) - before - overhead;
+            long budget = BYTES_PER_KEYSTROKE + BYTES_PER_LEARNED_LOOKUP * (mode == InputMode.Mixed ? 2 : 1) + BYTES_PER_CANDIDATE * candidates.size();
+            assertTrue(mode + " \"" + prefixes[i] + "\" allocated " + bytes + " bytes for " + candidates.size() + " candidates, over " + budget,
+                    bytes <= budget);
+        }
+    }
+
+    /**
+     * Every prefix of every word, as typed; allocated up front so the loop does not.
+     */
+    private static String[] prefixes(String[] words) {
+        int count = 0;
+        for (String word : words) {
+            count += word.length();
+        }
+        String[] prefixes = new String[count];
+        int i = 0;
+        for (String word : words) {
+            for (int length = 1; length <= word.length(); length++) {
+                prefixes[i++] = word.substring(0, length);
+            }
+        }
+        return prefixes;
+    }
+
+    /**
+     * What reading the counter costs, to take off each sample.
+     */
+    private static long counterOverhead() {
+        long thread = Thread.currentThread().getId();
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long before = THREADS.getThreadAllocatedBytes(thread);
+            overhead = Math.min(overhead, THREADS.getThreadAllocatedBytes(thread) - before);
+        }
+        return overhead;
+    }
+}
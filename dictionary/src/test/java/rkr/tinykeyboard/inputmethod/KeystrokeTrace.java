@@ -0,0 +1,214 @@
+package rkr.tinykeyboard.inputmethod;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keystroke traces, replayed through the candidate pipeline the way SoftKeyboard drives
+ * it, with no Android in the way. TraceGoldenTest checks them against their golden files;
+ * the TraceReplay tool times them.
+ *
+ * <p>A trace is whitespace separated: a run of lower case letters types them one at a
+ * time, DEL deletes a letter, SPACE commits the composition with a space, PICK n commits
+ * the n-th candidate shown, counted from 0, and LANG switches to the next input mode.
+ * Lines starting with # are comments.
+ */
+final class KeystrokeTrace {
+    // Learned words decay with time, so each event runs on a fake clock this much later
+    private static final long EVENT_INTERVAL_MS = 200;
+
+    private KeystrokeTrace() {
+    }
+
+    /**
+     * The traces in {@code dir}, in name order.
+     */
+    static List<File> list(File dir) throws IOException {
+        File[] traces = dir.listFiles((parent, name) -> name.endsWith(".trace"));
+        if (traces == null) {
+            throw new IOException("No trace directory " + dir);
+        }
+        List<File> sorted = new ArrayList<>();
+        Collections.addAll(sorted, traces);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * The golden file beside {@code trace}.
+     */
+    static File golden(File trace) {
+        return new File(trace.getPath().replaceFirst("\\.trace$", "") + ".golden");
+    }
+
+    /**
+     * The golden file lines for {@code events} replayed from a fresh keyboard.
+     */
+    static List<String> describe(List<String> events, Dictionaries dictionaries, KeyProximity proximity) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (Replay replay = new Replay(dictionaries, proximity)) {
+            for (String event : events) {
+                replay.handle(event);
+                lines.add(replay.describe(event));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * The events of {@code trace}, with letter runs split into one event per letter.
+     */
+    static List<String> readEvents(File trace) throws IOException {
+        List<String> events = new ArrayList<>();
+        for (String line : Files.readAllLines(trace.toPath(), StandardCharsets.UTF_8)) {
+            if (line.trim().startsWith("#")) {
+                continue;
+            }
+            String[] tokens = line.trim().split("\\s+");
+            for (int i = 0; i < tokens.length; i++) {
+                String token = tokens[i];
+                if (token.isEmpty()) {
+                    continue;
+                }
+                if (token.equals("PICK")) {
+                    if (i + 1 == tokens.length || !tokens[i + 1].matches("\\d+")) {
+                        throw new IOException(trace.getName() + ": PICK needs a candidate index");
+                    }
+                    events.add("PICK " + tokens[++i]);
+                } else if (token.equals("DEL") || token.equals("SPACE") || token.equals("LANG")) {
+                    events.add(token);
+                } else if (token.matches("[a-z]+")) {
+                    for (int j = 0; j < token.length(); j++) {
+                        events.add(token.substring(j, j + 1));
+                    }
+                } else {
+                    throw new IOException(trace.getName() + ": unknown event " + token);
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * The composition state of SoftKeyboard, with its key, commit and candidate pick
+     * handling; keep the two in step. Learned words go to a fresh user dictionary.
+     */
+    static final class Replay implements AutoCloseable {
+        private final Dictionaries dictionaries;
+        private final KeyProximity proximity;
+        private final File userDictFile;
+        private final UserDict userDict;
+        private final CandidateGenerator generator;
+        private final StringBuilder compositionText = new StringBuilder();
+        private InputMode inputMode = InputMode.English;
+        private String previousWord;
+        private long now;
+        private List<String> shown = Collections.emptyList();
+        // The composition, or what the last event committed
+        private String text = "";
+
+        Replay(Dictionaries dictionaries, KeyProximity proximity) throws IOException {
+            this.dictionaries = dictionaries;
+            this.proximity = proximity;
+            userDictFile = File.createTempFile("user_dict", ".log");
+            userDict = new UserDict(userDictFile, () -> now);
+            // As the keyboard does at startup; this also starts the writer thread
+            userDict.load();
+            generator = new CandidateGenerator(userDict);
+        }
+
+        void handle(String event) {
+            now += EVENT_INTERVAL_MS;
+            if (event.equals("DEL")) {
+                if (compositionText.length() >= 1) {
+                    compositionText.deleteCharAt(compositionText.length() - 1);
+                }
+                updateCandidates();
+            } else if (event.equals("SPACE")) {
+                compositionText.append(' ');
+                commitInput();
+            } else if (event.equals("LANG")) {
+                previousWord = null;
+                text = "";
+                reset();
+                inputMode = InputMode.values()[(inputMode.ordinal() + 1) % InputMode.values().length];
+            } else if (event.startsWith("PICK ")) {
+                int index = Integer.parseInt(event.substring("PICK ".length()));
+                if (index >= shown.size()) {
+                    throw new IllegalStateException("PICK " + index + " with " + shown.size() + " candidates shown");
+                }
+                String candidate = shown.get(index);
+                text = candidate;
+                learn(candidate);
+                reset();
+            } else {
+                compositionText.append(event.charAt(0));
+                updateCandidates();
+            }
+        }
+
+        /**
+         * A golden file line for the last event: the event, the input mode, the composition
+         * or the committed text, then the candidates shown, all tab separated.
+         */
+        String describe(String event) {
+            StringBuilder line = new StringBuilder().append(event).append('\t').append(inputMode).append('\t').append(text);
+            for (String candidate : shown) {
+                line.append('\t').append(candidate);
+            }
+            return line.toString();
+        }
+
+        private void updateCandidates() {
+            text = compositionText.toString();
+            String prefix = text.toLowerCase();
+            shown = prefix.isEmpty() ? Collections.<String>emptyList() : generator.query(prefix, inputMode, dictionaries, proximity);
+        }
+
+        private void commitInput() {
+            text = compositionText.toString();
+            if (inputMode != InputMode.Pinyin) {
+                int end = compositionText.length();
+                while (end > 0 && !Character.isLetter(compositionText.charAt(end - 1))) {
+                    end--;
+                }
+                learn(compositionText.substring(0, end));
+            } else {
+                previousWord = null;
+            }
+            reset();
+        }
+
+        private void reset() {
+            compositionText.setLength(0);
+            shown = Collections.emptyList();
+            if (previousWord != null) {
+                List<String> predictions = generator.predictions(previousWord, dictionaries);
+                if (!predictions.isEmpty()) {
+                    shown = predictions;
+                }
+            }
+        }
+
+        private void learn(String word) {
+            InputMode mode = UserDict.learnedMode(inputMode, word);
+            String reading = mode == InputMode.English ? word.toLowerCase() : compositionText.toString().toLowerCase();
+            userDict.record(mode, reading, word);
+            if (previousWord != null) {
+                userDict.recordFollower(previousWord, word);
+            }
+            previousWord = word.isEmpty() ? null : word;
+        }
+
+        @Override
+        public void close() {
+            userDict.close();
+            userDictFile.deleteOnExit();
+        }
+    }
+}
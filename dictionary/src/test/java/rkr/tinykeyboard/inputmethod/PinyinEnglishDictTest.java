@@ -0,0 +1,107 @@
+package rkr.tinykeyboard.inputmethod;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import rkr.tinykeyboard.dict.CedictCompiler;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The pinyin to English index the keyboard maps at startup. It is compiled from CC-CEDICT,
+ * which is not checked in, so the index tests are skipped until ./gradlew :app:downloadCedict
+ * has fetched it; the compiler tests always run.
+ */
+public class PinyinEnglishDictTest {
+    private static PinyinEnglishDict dict;
+
+    private static PinyinEnglishDict dict() throws IOException {
+        Assume.assumeTrue(TestDictionaries.CEDICT_SOURCE + " is missing", TestDictionaries.CEDICT_SOURCE.isFile());
+        if (dict == null) {
+            dict = PinyinEnglishDict.map(TestDictionaries.cedict());
+        }
+        return dict;
+    }
+
+    @Test
+    public void indexIsNotEmpty() throws IOException {
+        assertTrue("cedict.bin holds no pinyin", dict().size() > 0);
+    }
+
+    @Test
+    public void knownPinyinHasItsEnglish() throws IOException {
+        List<String> english = dict().get("zhongguo");
+        assertTrue(String.valueOf(english), english.contains("China"));
+    }
+
+    @Test
+    public void unknownPinyinHasNoEnglish() throws IOException {
+        assertTrue(dict().get("qqq").isEmpty());
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void compilerRejectsMissingSource() throws IOException {
+        File dir = Files.createTempDirectory("hallelujah-cedict").toFile();
+        dir.deleteOnExit();
+        CedictCompiler.compile(new File(dir, "cedict_ts.u8"), new File(dir, "cedict.bin"));
+    }
+
+    @Test(expected = IOException.class)
+    public void compilerRejectsSourceWithoutEntries() throws IOException {
+        File source = File.createTempFile("cedict_ts", ".u8");
+        source.deleteOnExit();
+        Files.write(source.toPath(), "# CC-CEDICT\n".getBytes("UTF-8"));
+        File output = File.createTempFile("cedict", ".bin");
+        output.deleteOnExit();
+        CedictCompiler.compile(source, output);
+    }
+
+    @Test
+    public void referenceGlossesAreDropped() throws IOException {
+        PinyinEnglishDict dict = compile(
+                "李 李 [Li3] /surname Li/plum/",
+                "裡 里 [li3] /variant of 裏|里[li3]/",
+                "着 着 [zhao2] /to touch/see also 著|着[zhuo2]/",
+                "吃 吃 [chi1] /to eat/CL:頓|顿[dun4]/",
+                "牠 它 [ta1] /old variant of 它[ta1]/",
+                "乂 乂 [yi4] /abbr. for 刈[yi4]/");
+        assertEquals(Collections.singletonList("plum"), dict.get("li"));
+        assertEquals(Collections.singletonList("to touch"), dict.get("zhao"));
+        assertEquals(Collections.singletonList("to eat"), dict.get("chi"));
+        assertTrue(dict.get("ta").isEmpty());
+        assertTrue(dict.get("yi").isEmpty());
+    }
+
+    @Test
+    public void notesAndPinyinAreCutFromGlosses() throws IOException {
+        PinyinEnglishDict dict = compile(
+                "它 它 [ta1] /it (used for animals or objects)/",
+                "剪 剪 [jian3] /to cut (hair, paper etc), to trim/",
+                "唐 唐 [Tang2] /Tang dynasty [618-907]/",
+                "垃圾 垃圾 [la1 ji1] /(Tw) garbage/(computing) (slang) spam/");
+        assertEquals(Collections.singletonList("it"), dict.get("ta"));
+        assertEquals(Collections.singletonList("to cut, to trim"), dict.get("jian"));
+        assertEquals(Collections.singletonList("Tang dynasty"), dict.get("tang"));
+        assertEquals(Arrays.asList("garbage", "spam"), dict.get("laji"));
+    }
+
+    private static PinyinEnglishDict compile(String... lines) throws IOException {
+        File source = File.createTempFile("cedict_ts", ".u8");
+        source.deleteOnExit();
+        Files.write(source.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        File output = File.createTempFile("cedict", ".bin");
+        output.deleteOnExit();
+        CedictCompiler.compile(source, output);
+        return PinyinEnglishDict.map(output);
+    }
+}
@@ -0,0 +1,116 @@
+package rkr.tinykeyboard.inputmethod;
+
+import rkr.tinykeyboard.dict.BigramDictCompiler;
+import rkr.tinykeyboard.dict.CedictCompiler;
+import rkr.tinykeyboard.dict.EnglishDictCompiler;
+import rkr.tinykeyboard.dict.PinyinDictCompiler;
+import rkr.tinykeyboard.dict.PrefixTableCompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Dictionaries for the tests. The sources are read from the directory in the
+ * hallelujah.dictDir system property (app/dict when run through Gradle), and each is
+ * compiled on first use into a temporary directory shared by the tests of one JVM.
+ */
+final class TestDictionaries {
+    static final File SOURCE_DIR = new File(System.getProperty("hallelujah.dictDir", "app/dict"));
+    static final File ENGLISH_SOURCE = new File(SOURCE_DIR, "google_227800_words.json");
+    static final File PINYIN_SOURCE = new File(SOURCE_DIR, "google_pinyin_rawdict_utf8_65105_freq.txt");
+    // Not checked in; fetched by ./gradlew :app:downloadCedict
+    static final File CEDICT_SOURCE = new File(SOURCE_DIR, "cedict_ts.u8");
+
+    private static File compiledDir;
+    private static File english;
+    private static File pinyin;
+    private static File bigrams;
+    private static File prefixTable;
+    private static File cedict;
+
+    private TestDictionaries() {
+    }
+
+    private static synchronized File compiledDir() throws IOException {
+        if (compiledDir == null) {
+            compiledDir = Files.createTempDirectory("hallelujah-test-dict").toFile();
+            compiledDir.deleteOnExit();
+        }
+        return compiledDir;
+    }
+
+    static synchronized File english() throws IOException {
+        if (english == null) {
+            File file = new File(compiledDir(), "english_dict.bin");
+            EnglishDictCompiler.compile(ENGLISH_SOURCE, file);
+            file.deleteOnExit();
+            english = file;
+        }
+        return english;
+    }
+
+    static synchronized File pinyin() throws IOException {
+        if (pinyin == null) {
+            File file = new File(compiledDir(), "pinyin_dict.bin");
+            PinyinDictCompiler.compile(PINYIN_SOURCE, file);
+            file.deleteOnExit();
+            pinyin = file;
+        }
+        return pinyin;
+    }
+
+    static synchronized File bigrams() throws IOException {
+        if (bigrams == null) {
+            File file = new File(compiledDir(), "bigram_dict.bin");
+            BigramDictCompiler.compile(PINYIN_SOURCE, file);
+            file.deleteOnExit();
+            bigrams = file;
+        }
+        return bigrams;
+    }
+
+    /**
+     * The prefix table as the app builds it, for {@link CandidateGenerator#MAX_CANDIDATES}.
+     */
+    static synchronized File prefixTable() throws IOException {
+        if (prefixTable == null) {
+            File file = new File(compiledDir(), "prefix_table.bin");
+            PrefixTableCompiler.compile(ENGLISH_SOURCE, PINYIN_SOURCE, file, CandidateGenerator.MAX_CANDIDATES);
+            file.deleteOnExit();
+            prefixTable = file;
+        }
+        return prefixTable;
+    }
+
+    static synchronized File cedict() throws IOException {
+        if (cedict == null) {
+            File file = new File(compiledDir(), "cedict.bin");
+            CedictCompiler.compile(CEDICT_SOURCE, file);
+            file.deleteOnExit();
+            cedict = file;
+        }
+        return cedict;
+    }
+
+    /**
+     * The letter rows of res/xml/qwerty.xml in key units, for the typo search.
+     */
+    static KeyProximity qwerty() {
+        String[] rows = {"qwertyuiop", "asdfghjkl", "zxcvbnm"};
+        float[] insets = {0, 0.5f, 1.5f};
+        int[] codes = new int[26];
+        float[] x = new float[26];
+        float[] y = new float[26];
+        int key = 0;
+        for (int row = 0; row < rows.length; row++) {
+            for (int column = 0; column < rows[row].length(); column++) {
+                codes[key] = rows[row].charAt(column);
+                x[key] = insets[row] + column + 0.5f;
+                y[key] = row + 0.5f;
+                key++;
+            }
+        }
+        return new KeyProximity(codes, x, y);
+    }
+}
@@ -0,0 +1,62 @@
+package rkr.tinykeyboard.inputmethod;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays each keystroke trace in dictionary/traces and checks the candidates shown after
+ * every event against the golden file beside it, so a change in ranking fails the build.
+ * After an intended change, rewrite the golden files with
+ * ./gradlew :dictionary:test --tests '*TraceGoldenTest' -PupdateGoldens and review their diff.
+ */
+@RunWith(Parameterized.class)
+public class TraceGoldenTest {
+    private static final File TRACE_DIR = new File(System.getProperty("hallelujah.traceDir", "traces"));
+    private static final boolean UPDATE = Boolean.getBoolean("hallelujah.updateGoldens");
+
+    private static Dictionaries dictionaries;
+
+    @Parameterized.Parameter
+    public File trace;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<File> traces() throws IOException {
+        return KeystrokeTrace.list(TRACE_DIR);
+    }
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        dictionaries = Dictionaries.EMPTY
+                .withEnglish(EnglishDict.map(TestDictionaries.english()))
+                .withPinyin(PinyinDict.map(TestDictionaries.pinyin()))
+                .withBigrams(BigramDict.map(TestDictionaries.bigrams()))
+                .withPrefixes(PrefixTable.map(TestDictionaries.prefixTable()));
+    }
+
+    @Test
+    public void candidatesMatchGoldenFile() throws IOException {
+        List<String> actual = KeystrokeTrace.describe(KeystrokeTrace.readEvents(trace), dictionaries, TestDictionaries.qwerty());
+        File golden = KeystrokeTrace.golden(trace);
+        if (UPDATE) {
+            Files.write(golden.toPath(), actual, StandardCharsets.UTF_8);
+            return;
+        }
+        assertTrue("No " + golden.getName() + "; run with -PupdateGoldens to create it", golden.exists());
+        List<String> expected = Files.readAllLines(golden.toPath(), StandardCharsets.UTF_8);
+        for (int i = 0; i < Math.max(actual.size(), expected.size()); i++) {
+            assertEquals(trace.getName() + " line " + (i + 1),
+                    i < expected.size() ? expected.get(i) : "<end>", i < actual.size() ? actual.get(i) : "<end>");
+        }
+    }
+}
@@ -0,0 +1 @@
+adb shell dumpsys activity service rkr.tinykeyboard.inputmethod/.SoftKeyboard "$@"